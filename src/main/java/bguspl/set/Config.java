@@ -7,6 +7,7 @@ import java.nio.file.InvalidPathException;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Properties;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,6 +37,21 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * The cache directory of the precomputed card catalogs (empty if the catalog should not be used)
+     */
+    public final String setCatalogDirectory;
+
+    /**
+     * True iff the game is seeded - all its random streams are derived from seed (otherwise a random seed is used)
+     */
+    public final boolean seeded;
+
+    /**
+     * The master seed of the game (if seeded)
+     */
+    public final long seed;
+
     /**
      * The number of human players in the game.
      */
@@ -51,16 +67,44 @@ public class Config {
      */
     public final int players;
 
+    /**
+     * The strategy of each computer player (random or oracle)
+     * Note: if there are more computer players than strategies, the last strategy is used for the remaining players.
+     */
+    private final String[] computerStrategies;
+
+    /**
+     * The number of milliseconds between the key presses of each computer player
+     * Note: if there are more computer players than delays, the last delay is used for the remaining players.
+     */
+    private final long[] computerPressDelaysMillis;
+
     /**
      * Whether to print out hints to the console or not
      */
     public final boolean hints;
 
+    /**
+     * Where to publish the hints to (console and/or log)
+     */
+    public final String[] hintSinks;
+
+    /**
+     * The minimum number of legal sets the dealer makes sure are in a new deal (in modes without a countdown)
+     */
+    public final int dealMinimumSets;
+
     /**
      * The number of milliseconds until the dealer reshuffles the deck (0 show timer since last action, -1 show nothing)
      */
     public final long turnTimeoutMillis;
 
+    /**
+     * How the dealer reshuffles the table (full - all the cards are dealt again, or partial - only as many cards as
+     * needed for a legal set are replaced)
+     */
+    public final String reshufflePolicy;
+
     /**
      * The number of milliseconds the turn countdown warning should be displayed
      */
@@ -86,6 +130,89 @@ public class Config {
      */
     public final long endGamePauseMillies;
 
+    /**
+     * The number of milliseconds between samples of the CPU time and allocations of the game threads (0 for none)
+     */
+    public final long threadAccountingMillis;
+
+    /**
+     * The number of milliseconds the dealer loop may lag behind its heartbeat before the lag is flagged (0 for never)
+     */
+    public final long watchdogLagMillis;
+
+    /**
+     * The number of milliseconds the dealer (or a player waiting for it) may stall before the threads are dumped to
+     * the log (0 for never)
+     */
+    public final long watchdogStallMillis;
+
+    /**
+     * The number of milliseconds between checkpoints of the game in progress (0 for none)
+     */
+    public final long checkpointMillis;
+
+    /**
+     * The base name of the checkpoint files (two files are written in turn: name.a.ckpt and name.b.ckpt)
+     */
+    public final String checkpointFile;
+
+    /**
+     * The directory of the leaderboard every game is recorded in (empty for none)
+     */
+    public final String leaderboardDirectory;
+
+    /**
+     * The number of the latest game results kept in the leaderboard log when it is compacted (the totals of the
+     * players include all the games)
+     */
+    public final long leaderboardRetainGames;
+
+    /**
+     * The number of key presses of a human player that can wait for his thread
+     */
+    public final int inputBufferSize;
+
+    /**
+     * What to do with a key press when the presses waiting for the player fill the buffer (drop_oldest or drop_newest)
+     */
+    public final String inputOverflowPolicy;
+
+    /**
+     * Which key presses to merge (none, repeats - of the same key within inputCoalesceMillis, or toggles - two
+     * waiting presses of the same key)
+     */
+    public final String inputCoalescing;
+
+    /**
+     * The number of milliseconds within which a repeated press of the same key is merged
+     */
+    public final long inputCoalesceMillis;
+
+    /**
+     * The number of key presses per second admitted from each player (0 for no limit), and the number of presses he
+     * can make at once
+     */
+    public final double inputRate;
+    public final int inputBurst;
+
+    /**
+     * The number of claims per second admitted from all the players together (0 for no limit), and the number of
+     * claims they can make at once
+     */
+    public final double claimRate;
+    public final int claimBurst;
+
+    /**
+     * What to do with input over the limits (drop or defer)
+     */
+    public final String admissionPolicy;
+
+    /**
+     * The longest time (in milliseconds) input over the limits is deferred for - input that would wait longer is
+     * dropped
+     */
+    public final long admissionMaxDeferMillis;
+
     /**
      * The names of the players to display on the screen
      * Note: if there are more players than names, the remaining players will be called "Player 3", "Player 4", etc.
@@ -132,6 +259,11 @@ public class Config {
      */
     public final int fontSize;
 
+    /**
+     * The maximal number of frames per second drawn by the terminal user interface (used when there is no display)
+     */
+    public final int terminalFrameRate;
+
     /**
      * The scancodes of the keyboard input data for each player
      * Notes:
@@ -155,7 +287,7 @@ public class Config {
      * @param filename - the name of the configuration file.
      * @return - a properties object with the configuration file contents.
      */
-    private static Properties loadProperties(String filename, Logger logger) {
+    static Properties loadProperties(String filename, Logger logger) {
 
         Properties properties = new Properties();
 
@@ -176,6 +308,24 @@ public class Config {
         return properties;
     }
 
+    /**
+     * Parses the name of a policy (case insensitive, with '-' for '_').
+     *
+     * @param logger       - the logger the warning about an unknown name is written to.
+     * @param type         - the policy type.
+     * @param name         - the name of the policy.
+     * @param defaultValue - the policy used if the name is unknown.
+     * @return - the policy.
+     */
+    public static <T extends Enum<T>> T parsePolicy(Logger logger, Class<T> type, String name, T defaultValue) {
+        try {
+            return Enum.valueOf(type, name.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            logger.severe("warning: unknown " + type.getSimpleName().toLowerCase() + " policy " + name + " using " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+
     public Config(Logger logger, String configFilename) {
         this(logger, loadProperties(configFilename, logger));
     }
@@ -186,6 +336,15 @@ public class Config {
         Level logLevel = Level.parse(properties.getProperty("LogLevel", "ALL"));
         String logFormat = properties.getProperty("LogFormat", "[%1$tT.%1$tL] [%2$-7s] %3$s%n");
         Main.setLoggerLevelAndFormat(logger, logLevel, logFormat);
+        long logSegmentBytes = (long) (Double.parseDouble(properties.getProperty("LogSegmentMegabytes", "16")) * 1048576.0);
+        int logMaxFiles = Integer.parseInt(properties.getProperty("LogMaxFiles", "100"));
+        long logMaxTotalBytes = (long) (Double.parseDouble(properties.getProperty("LogMaxTotalMegabytes", "512")) * 1048576.0);
+        long logRetentionMillis = (long) (Double.parseDouble(properties.getProperty("LogRetentionDays", "30")) * 86400000.0);
+        boolean logCompression = Boolean.parseBoolean(properties.getProperty("LogCompression", "True"));
+        Handler[] handlers = logger.getHandlers();
+        if (handlers != null) for (Handler handler : handlers)
+            if (handler instanceof RollingLogHandler)
+                ((RollingLogHandler) handler).configure(logSegmentBytes, logMaxFiles, logMaxTotalBytes, logRetentionMillis, logCompression);
 
         // for debugging
         randomSpinMin = Long.parseLong(properties.getProperty("RandomSpinMin", "0"));
@@ -197,19 +356,49 @@ public class Config {
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
+        setCatalogDirectory = properties.getProperty("SetCatalogDirectory", "").trim();
 
         // gameplay settings
+        String seedString = properties.getProperty("Seed", "").trim();
+        seeded = !seedString.isEmpty();
+        seed = seeded ? Long.parseLong(seedString) : 0;
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
         computerPlayers = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
         players = humanPlayers + computerPlayers;
+        computerStrategies = Arrays.stream(properties.getProperty("ComputerStrategies", "random").split(","))
+                .map(String::trim).toArray(String[]::new);
+        computerPressDelaysMillis = Arrays.stream(properties.getProperty("ComputerPressDelaySeconds", "1").split(","))
+                .mapToLong(delay -> (long) (Double.parseDouble(delay.trim()) * 1000.0)).toArray();
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
+        hintSinks = Arrays.stream(properties.getProperty("HintSinks", "console").split(",")).map(String::trim).toArray(String[]::new);
+        dealMinimumSets = Integer.parseInt(properties.getProperty("DealMinimumSets", "1"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
+        reshufflePolicy = properties.getProperty("ReshufflePolicy", "full");
         turnTimeoutWarningMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningSeconds", "60")) * 1000.0);
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
+        threadAccountingMillis = (long) (Double.parseDouble(properties.getProperty("ThreadAccountingSeconds", "1")) * 1000.0);
+        watchdogLagMillis = (long) (Double.parseDouble(properties.getProperty("WatchdogLagSeconds", "2")) * 1000.0);
+        watchdogStallMillis = (long) (Double.parseDouble(properties.getProperty("WatchdogStallSeconds", "10")) * 1000.0);
+        checkpointMillis = (long) (Double.parseDouble(properties.getProperty("CheckpointSeconds", "0")) * 1000.0);
+        checkpointFile = properties.getProperty("CheckpointFile", "checkpoints/game").trim();
+        leaderboardDirectory = properties.getProperty("LeaderboardDirectory", "").trim();
+        leaderboardRetainGames = Long.parseLong(properties.getProperty("LeaderboardRetainGames", "10000"));
+
+        // input settings
+        inputBufferSize = Integer.parseInt(properties.getProperty("InputBufferSize", "16"));
+        inputOverflowPolicy = properties.getProperty("InputOverflowPolicy", "drop_oldest");
+        inputCoalescing = properties.getProperty("InputCoalescing", "repeats");
+        inputCoalesceMillis = (long) (Double.parseDouble(properties.getProperty("InputCoalesceSeconds", "0.05")) * 1000.0);
+        inputRate = Double.parseDouble(properties.getProperty("InputRatePerSecond", "0"));
+        inputBurst = Integer.parseInt(properties.getProperty("InputBurst", "5"));
+        claimRate = Double.parseDouble(properties.getProperty("ClaimRatePerSecond", "0"));
+        claimBurst = Integer.parseInt(properties.getProperty("ClaimBurst", "4"));
+        admissionPolicy = properties.getProperty("AdmissionPolicy", "defer");
+        admissionMaxDeferMillis = (long) (Double.parseDouble(properties.getProperty("AdmissionMaxDeferSeconds", "0.5")) * 1000.0);
 
         // ui settings
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
@@ -224,6 +413,7 @@ public class Config {
         playerCellWidth = Integer.parseInt(properties.getProperty("PlayerCellWidth", "300"));
         playerCellHeight = Integer.parseInt(properties.getProperty("PlayerCellHeight", "40"));
         fontSize = Integer.parseInt(properties.getProperty("FontSize", "40"));
+        terminalFrameRate = Integer.parseInt(properties.getProperty("TerminalFrameRate", "10"));
 
         // keyboard input data
         playerKeys = new int[players][rows * columns];
@@ -244,4 +434,20 @@ public class Config {
     public int[] playerKeys(int player) {
         return playerKeys[player];
     }
+
+    /**
+     * @param player - the id of a computer player.
+     * @return - the name of the player's strategy.
+     */
+    public String computerStrategy(int player) {
+        return computerStrategies[Math.min(player - humanPlayers, computerStrategies.length - 1)];
+    }
+
+    /**
+     * @param player - the id of a computer player.
+     * @return - the number of milliseconds between the player's key presses.
+     */
+    public long computerPressDelayMillis(int player) {
+        return computerPressDelaysMillis[Math.min(player - humanPlayers, computerPressDelaysMillis.length - 1)];
+    }
 }
@@ -0,0 +1,319 @@
+package bguspl.set;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.logging.Handler;
+import java.util.logging.Logger;
+
+/**
+ * This class runs a campaign of games (a tournament) across several worker processes on the local machine.
+ * The games are split into contiguous shards; every shard is played by a worker JVM (a tournament of its range of
+ * games, with its own settings file and seeds) which writes its results by game order to a binary shard file and
+ * reports its progress over its standard output pipe. When all the workers end, the shard files are merged by game
+ * in a single streaming pass (a k-way merge) into the results and the ratings of the campaign. If a worker fails (it
+ * exits with an error, or its shard file is missing or incomplete) the results of the other shards are still merged,
+ * but the campaign fails.
+ *
+ * The campaign settings file is a tournament settings file with the keys below. Game settings of a single shard are
+ * given as Shard.[shard number].[key]=[value] (e.g. Shard.0.TurnTimeoutSeconds=5).
+ */
+public class Coordinator {
+
+    /**
+     * The prefix of the progress lines of a worker ("@progress [games done] [games]").
+     */
+    static final String PROGRESS = "@progress ";
+
+    /**
+     * The prefix of the shard specific settings.
+     */
+    private static final String SHARD_PREFIX = "Shard.";
+
+    /**
+     * A shard file being merged and its next result.
+     */
+    private static class ShardReader {
+        final int shard;
+        final DataInputStream in;
+        GameResult head;
+
+        ShardReader(int shard, DataInputStream in) {
+            this.shard = shard;
+            this.in = in;
+        }
+    }
+
+    private final Logger logger;
+
+    /**
+     * The campaign settings (with the seed fixed, so all the shards derive their seeds from the same one).
+     */
+    private final Properties settings;
+
+    /**
+     * The number of games of the campaign.
+     */
+    private final int games;
+
+    /**
+     * The number of worker processes, and the number of games each of them plays at the same time.
+     */
+    private final int workers;
+    private final int workerThreads;
+
+    /**
+     * The JVM options of the worker processes.
+     */
+    private final List<String> workerJvmOptions;
+
+    /**
+     * The directory of the shard settings and result files.
+     */
+    private final Path shardDirectory;
+
+    /**
+     * The number of games done by each worker (guarded by this).
+     */
+    private final int[] done;
+
+    /**
+     * The number of games done by all the workers when the progress was last reported (guarded by this).
+     */
+    private int reported;
+
+    /**
+     * The number of games between progress reports.
+     */
+    private final int reportEvery;
+
+    public Coordinator(Logger logger, Properties settings) {
+        this.logger = logger;
+        this.settings = new Properties();
+        this.settings.putAll(settings);
+        this.settings.setProperty("Seed", settings.getProperty("Seed", String.valueOf(System.nanoTime())));
+
+        games = Integer.parseInt(settings.getProperty("Games", "100"));
+        int cores = Runtime.getRuntime().availableProcessors();
+        workers = Math.max(1, Math.min(games, Integer.parseInt(settings.getProperty("Workers", "2"))));
+        workerThreads = Integer.parseInt(settings.getProperty("WorkerThreads", String.valueOf(Math.max(1, cores / workers))));
+        String options = settings.getProperty("WorkerJvmOptions", "").trim();
+        workerJvmOptions = options.isEmpty() ? new ArrayList<>() : Arrays.asList(options.split("\\s+"));
+        shardDirectory = Paths.get(settings.getProperty("ShardDirectory", "results/shards"));
+        reportEvery = Integer.parseInt(settings.getProperty("ReportEvery", "100"));
+        done = new int[workers];
+    }
+
+    /**
+     * The coordinator's main function.
+     *
+     * The process exits with a non-zero code if the campaign failed.
+     *
+     * @param args - the name of the campaign settings file (tournament.properties if not given).
+     */
+    public static void main(String[] args) {
+        Logger logger = Main.initLogger();
+        String filename = args.length > 0 ? args[0] : "tournament.properties";
+        boolean failed = true;
+        try {
+            new Coordinator(logger, Config.loadProperties(filename, logger)).run();
+            failed = false;
+        } catch (IllegalArgumentException | IOException e) {
+            logger.severe("the campaign failed: " + e.getMessage());
+            System.out.println("The campaign failed: " + e.getMessage());
+        } catch (InterruptedException ignored) {
+        } finally {
+            for (Handler h : logger.getHandlers()) h.flush();
+        }
+        if (failed) System.exit(1);
+    }
+
+    /**
+     * Runs the workers, waits for them to end and merges their results.
+     * @throws IOException - if the campaign cannot be run, or if a worker failed or the results miss a game (the
+     *                       results of the others are merged first).
+     */
+    public void run() throws IOException, InterruptedException {
+        // the merging tournament validates the settings before any worker is started
+        Properties mergeSettings = new Properties();
+        mergeSettings.putAll(settings);
+        mergeSettings.remove("BinaryResults");
+        Tournament tournament = new Tournament(logger, mergeSettings);
+
+        Files.createDirectories(shardDirectory);
+        logger.severe("campaign of " + games + " games on " + workers + " workers, seed " + settings.getProperty("Seed"));
+        long start = System.currentTimeMillis();
+
+        Process[] processes = new Process[workers];
+        Thread[] readers = new Thread[workers];
+        Path[] shardFiles = new Path[workers];
+        boolean[] failed = new boolean[workers];
+        try {
+            for (int shard = 0; shard < workers; shard++) {
+                int first = (int) ((long) games * shard / workers);
+                int last = (int) ((long) games * (shard + 1) / workers);
+                shardFiles[shard] = shardDirectory.resolve("shard-" + shard + ".results").toAbsolutePath();
+                // a shard file left by an earlier campaign is not taken for the results of this one
+                Files.deleteIfExists(shardFiles[shard]);
+                Path settingsFile = shardDirectory.resolve("shard-" + shard + ".properties");
+                try (OutputStream out = Files.newOutputStream(settingsFile)) {
+                    shardSettings(shard, first, last - first, shardFiles[shard]).store(out, "shard " + shard + " of the campaign");
+                }
+
+                List<String> command = new ArrayList<>();
+                command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+                command.addAll(workerJvmOptions);
+                command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), Main.class.getName(),
+                        "--tournament", settingsFile.toAbsolutePath().toString()));
+                processes[shard] = new ProcessBuilder(command).redirectErrorStream(true).start();
+                readers[shard] = readOutput(shard, processes[shard]);
+            }
+
+            for (int shard = 0; shard < workers; shard++) {
+                int exitCode = processes[shard].waitFor();
+                readers[shard].join();
+                if (exitCode != 0) {
+                    logger.severe("worker " + shard + " exited with code " + exitCode);
+                    failed[shard] = true;
+                }
+            }
+        } finally {
+            for (Process process : processes)
+                if (process != null && process.isAlive()) process.destroy();
+        }
+
+        int merged = merge(tournament, shardFiles, failed);
+        List<Integer> failedShards = new ArrayList<>();
+        for (int shard = 0; shard < workers; shard++)
+            if (failed[shard]) failedShards.add(shard);
+        if (!failedShards.isEmpty())
+            throw new IOException("shards " + failedShards + " failed - the results hold only " + merged + " of " + games + " games");
+        if (merged != games)
+            throw new IOException("the results hold only " + merged + " of " + games + " games");
+
+        String summary = String.format("campaign ended: %d games in %.1f seconds", merged, (System.currentTimeMillis() - start) / 1000.0);
+        logger.severe(summary);
+        System.out.println(summary);
+    }
+
+    /**
+     * @return - the settings of a shard: the campaign settings with the shard specific settings, its range of games
+     * and its result file.
+     */
+    private Properties shardSettings(int shard, int firstGame, int shardGames, Path shardFile) {
+        Properties properties = new Properties();
+        String prefix = SHARD_PREFIX + shard + ".";
+        for (String key : settings.stringPropertyNames())
+            if (!key.startsWith(SHARD_PREFIX)) properties.setProperty(key, settings.getProperty(key));
+        for (String key : settings.stringPropertyNames())
+            if (key.startsWith(prefix)) properties.setProperty(key.substring(prefix.length()), settings.getProperty(key));
+        properties.setProperty("FirstGame", String.valueOf(firstGame));
+        properties.setProperty("Games", String.valueOf(shardGames));
+        properties.setProperty("Threads", String.valueOf(workerThreads));
+        properties.setProperty("Results", "");
+        properties.setProperty("Ratings", "");
+        properties.setProperty("Leaderboard", "");
+        properties.setProperty("BinaryResults", shardFile.toString());
+        properties.setProperty("ReportProgress", "True");
+        return properties;
+    }
+
+    /**
+     * Starts a thread reading the output of a worker: progress lines update the progress of the campaign and the
+     * other lines are logged.
+     */
+    private Thread readOutput(int shard, Process process) {
+        Thread reader = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith(PROGRESS)) progress(shard, Integer.parseInt(line.substring(PROGRESS.length()).split(" ")[0]));
+                    else logger.info("worker " + shard + ": " + line);
+                }
+            } catch (IOException | NumberFormatException e) {
+                logger.severe("error reading the output of worker " + shard + ": " + e.getMessage());
+            }
+        }, "worker-" + shard);
+        reader.start();
+        return reader;
+    }
+
+    private synchronized void progress(int shard, int shardDone) {
+        done[shard] = shardDone;
+        int total = 0;
+        for (int d : done) total += d;
+        if (reportEvery > 0 && total / reportEvery > reported / reportEvery) {
+            logger.severe("campaign progress: " + total + "/" + games + " games");
+            System.out.println("Campaign progress: " + total + "/" + games + " games");
+        }
+        reported = total;
+    }
+
+    /**
+     * Merges the shard files by game (each of them is sorted by game) and records the results in the tournament.
+     * Only the next result of every shard is held in memory.
+     * @param failed - the failed shards - a shard whose file is missing or incomplete is marked as failed.
+     * @return - the number of results merged.
+     */
+    int merge(Tournament tournament, Path[] shardFiles, boolean[] failed) throws IOException {
+        PriorityQueue<ShardReader> heads = new PriorityQueue<>(Comparator.comparingInt((ShardReader reader) -> reader.head.game));
+        List<ShardReader> readers = new ArrayList<>();
+        try {
+            for (int shard = 0; shard < shardFiles.length; shard++) {
+                if (!Files.exists(shardFiles[shard])) {
+                    logger.severe("missing the results of shard " + shard);
+                    failed[shard] = true;
+                    continue;
+                }
+                ShardReader reader = new ShardReader(shard, new DataInputStream(new BufferedInputStream(Files.newInputStream(shardFiles[shard]))));
+                readers.add(reader);
+                if (advance(reader, failed)) heads.add(reader);
+            }
+
+            int merged = 0;
+            tournament.open();
+            try {
+                while (!heads.isEmpty()) {
+                    ShardReader reader = heads.poll();
+                    tournament.record(reader.head);
+                    merged++;
+                    if (advance(reader, failed)) heads.add(reader);
+                }
+            } finally {
+                tournament.close();
+            }
+            return merged;
+        } finally {
+            for (ShardReader reader : readers) reader.in.close();
+        }
+    }
+
+    /**
+     * Reads the next result of a shard.
+     * @return - true iff there is one (false at the end of the shard, or if it is incomplete - then it is marked as
+     * failed).
+     */
+    private boolean advance(ShardReader reader, boolean[] failed) {
+        try {
+            reader.head = GameResult.readFrom(reader.in);
+        } catch (IOException e) {
+            logger.severe("the results of shard " + reader.shard + " are incomplete: " + e);
+            failed[reader.shard] = true;
+            reader.head = null;
+        }
+        return reader.head != null;
+    }
+}
@@ -0,0 +1,149 @@
+package bguspl.set;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The result of a single game of a tournament (or of a single game recorded in the leaderboard).
+ *
+ * @inv names.length == scores.length == penalties.length == claims.length == claimMicros.length
+ */
+public class GameResult {
+
+    /**
+     * The number of the game in the tournament.
+     */
+    public final int game;
+
+    /**
+     * The seed the game was set up with.
+     */
+    public final long seed;
+
+    /**
+     * The number of milliseconds the game took.
+     */
+    public final long durationMillis;
+
+    /**
+     * True iff the game was stopped by the time limit before it ended.
+     */
+    public final boolean timedOut;
+
+    /**
+     * The roster names of the players (by player id).
+     */
+    public final String[] names;
+
+    /**
+     * The score of each player.
+     */
+    public final int[] scores;
+
+    /**
+     * The number of penalties of each player.
+     */
+    public final int[] penalties;
+
+    /**
+     * The number of claims of each player the dealer resolved, and the total number of microseconds they waited for
+     * the dealer (from the last token placed to the dealer's response).
+     */
+    public final int[] claims;
+    public final long[] claimMicros;
+
+    /**
+     * The mark written before every result in a binary results file, and the mark written at its end.
+     */
+    private static final byte RECORD = 1;
+    private static final byte END = 0;
+
+    public GameResult(int game, long seed, long durationMillis, boolean timedOut, String[] names, int[] scores, int[] penalties,
+                      int[] claims, long[] claimMicros) {
+        this.game = game;
+        this.seed = seed;
+        this.durationMillis = durationMillis;
+        this.timedOut = timedOut;
+        this.names = names;
+        this.scores = scores;
+        this.penalties = penalties;
+        this.claims = claims;
+        this.claimMicros = claimMicros;
+    }
+
+    /**
+     * @return - the highest score in the game.
+     */
+    public int topScore() {
+        int top = 0;
+        for (int score : scores) top = Math.max(top, score);
+        return top;
+    }
+
+    /**
+     * @param player - the player id.
+     * @return - true iff the player has the highest score (a tie counts as a win of all the tied players).
+     */
+    public boolean isWinner(int player) {
+        return scores[player] == topScore();
+    }
+
+    /**
+     * Writes the result as a record of a binary results file.
+     * @param out - the output of the file.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(RECORD);
+        out.writeInt(game);
+        out.writeLong(seed);
+        out.writeLong(durationMillis);
+        out.writeBoolean(timedOut);
+        out.writeInt(names.length);
+        for (int player = 0; player < names.length; player++) {
+            out.writeUTF(names[player]);
+            out.writeInt(scores[player]);
+            out.writeInt(penalties[player]);
+            out.writeInt(claims[player]);
+            out.writeLong(claimMicros[player]);
+        }
+    }
+
+    /**
+     * Writes the end mark of a binary results file (a file without it was not completely written).
+     * @param out - the output of the file.
+     */
+    public static void writeEnd(DataOutput out) throws IOException {
+        out.writeByte(END);
+    }
+
+    /**
+     * Reads the next record of a binary results file.
+     * @param in - the input of the file.
+     * @return - the result, or null at the end mark.
+     * @throws java.io.EOFException - if the file ended before the end mark.
+     */
+    public static GameResult readFrom(DataInput in) throws IOException {
+        byte mark = in.readByte();
+        if (mark == END) return null;
+        if (mark != RECORD) throw new IOException("corrupt results record");
+        int game = in.readInt();
+        long seed = in.readLong();
+        long durationMillis = in.readLong();
+        boolean timedOut = in.readBoolean();
+        int players = in.readInt();
+        String[] names = new String[players];
+        int[] scores = new int[players];
+        int[] penalties = new int[players];
+        int[] claims = new int[players];
+        long[] claimMicros = new long[players];
+        for (int player = 0; player < players; player++) {
+            names[player] = in.readUTF();
+            scores[player] = in.readInt();
+            penalties[player] = in.readInt();
+            claims[player] = in.readInt();
+            claimMicros[player] = in.readLong();
+        }
+        return new GameResult(game, seed, durationMillis, timedOut, names, scores, penalties, claims, claimMicros);
+    }
+}
@@ -5,10 +5,10 @@ import bguspl.set.ex.Player;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.util.Arrays;
-import java.util.logging.Logger;
 
 /**
  * This class handles the input from the keyboard, translates it to table grid slots and dispatches accordingly.
+ * It runs on the event thread, so it only enqueues the presses for the player threads (never blocks).
  */
 class InputManager extends KeyAdapter {
 
@@ -16,11 +16,9 @@ class InputManager extends KeyAdapter {
     private final Player[] players;
     int[] keyMap = new int[MAX_KEY_CODE + 1];
     int[] keyToSlot = new int[MAX_KEY_CODE + 1];
-    private final Logger logger;
 
-    public InputManager(Logger logger, Config config, Player[] players) {
+    public InputManager(Config config, Player[] players) {
         this.players = players;
-        this.logger = logger;
 
         // initialize the keys
         for (int player = 0; player < config.players; ++player)
@@ -42,9 +40,6 @@ class InputManager extends KeyAdapter {
         // dispatch the key event to the player according to the key map
         int keyCode = e.getKeyCode();
         int player = keyMap[keyCode] - 1;
-        if (player >= 0){
-            logger.severe("key " + keyCode + " was pressed by player " + (player + 1));
-            players[player].keyPressed(keyToSlot[keyCode]);
-        }
+        if (player >= 0) players[player].enqueueKeyPress(keyToSlot[keyCode], e.getWhen());
     }
 }
@@ -0,0 +1,552 @@
+package bguspl.set;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A file-backed leaderboard of all the games ever recorded.
+ * The directory holds two kinds of files:
+ * results-[generation].log - the results of the games (GameResult records), appended as they are recorded.
+ * index.bin - the totals of every player (games, wins, score, penalties, claims and their latency) in an
+ * open-addressing hash table by name, memory-mapped, so looking up a player takes a single probe sequence however
+ * many games were recorded. The players are also kept in a sorted set by wins, so the top n are found in O(log P + n).
+ *
+ * A result is appended to the log before it is added to the index, and the index keeps the length of the log it
+ * includes, so a result the index missed (the process died before it moved that length) is added when the
+ * leaderboard is opened. The length moves before the totals are updated: a process that dies while updating them
+ * loses that game from the totals (it stays in the log), but never counts a game twice.
+ * The totals never need the old results: once the log holds twice retainGames results it is compacted to the
+ * latest retainGames of them, into the log of the next generation.
+ * A single process at a time uses a leaderboard directory - it holds the lock on its leaderboard.lock file while the
+ * leaderboard is open.
+ */
+public class Leaderboard implements Closeable {
+
+    /**
+     * The totals of a single player.
+     */
+    public static final class Standing {
+        public final String name;
+        public final long games;
+        public final long wins;
+        public final long totalScore;
+        public final long penalties;
+        public final long claims;
+        public final long claimMicros;
+
+        Standing(String name, long games, long wins, long totalScore, long penalties, long claims, long claimMicros) {
+            this.name = name;
+            this.games = games;
+            this.wins = wins;
+            this.totalScore = totalScore;
+            this.penalties = penalties;
+            this.claims = claims;
+            this.claimMicros = claimMicros;
+        }
+
+        public double averageScore() {
+            return games == 0 ? 0 : (double) totalScore / games;
+        }
+
+        /**
+         * @return - the average time the claims of the player waited for the dealer, in milliseconds.
+         */
+        public double averageClaimMillis() {
+            return claims == 0 ? 0 : claimMicros / 1000.0 / claims;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-20s games %6d  wins %6d  avg score %6.2f  penalties %6d  avg claim %6.2f ms",
+                    name, games, wins, averageScore(), penalties, averageClaimMillis());
+        }
+    }
+
+    /**
+     * The key of a player in the ranking.
+     */
+    private static final class Rank {
+        final String name;
+        final long wins;
+        final long totalScore;
+
+        Rank(String name, long wins, long totalScore) {
+            this.name = name;
+            this.wins = wins;
+            this.totalScore = totalScore;
+        }
+    }
+
+    private static final Comparator<Rank> RANKING = Comparator.<Rank>comparingLong(rank -> -rank.wins)
+            .thenComparingLong(rank -> -rank.totalScore).thenComparing(rank -> rank.name);
+
+    /*
+     * The layout of the index file - the header, then the entries
+     */
+    private static final int MAGIC = 0x5345544c; // "SETL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int CAPACITY = 8;          // int - the number of entries (a power of 2)
+    private static final int SIZE = 12;             // int - the number of players
+    private static final int GAMES = 16;            // long - the number of games recorded
+    private static final int GENERATION = 24;       // long - the generation of the log
+    private static final int LOG_OFFSET = 32;       // long - the length of the log included in the index
+    private static final int LOG_GAMES = 40;        // long - the number of results in the log
+
+    private static final int ENTRY_BYTES = 128;
+    private static final int HASH = 0;              // long - the hash of the name (0 for an empty entry)
+    private static final int NAME_LENGTH = 8;       // short
+    private static final int NAME = 10;             // the name (UTF-8), up to MAX_NAME_BYTES bytes
+    private static final int PLAYED = 64;
+    private static final int WINS = 72;
+    private static final int SCORE = 80;
+    private static final int PENALTIES = 88;
+    private static final int CLAIMS = 96;
+    private static final int CLAIM_MICROS = 104;
+
+    /**
+     * The longest name kept (longer names are kept to their first MAX_NAME_BYTES bytes).
+     */
+    static final int MAX_NAME_BYTES = PLAYED - NAME;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Path directory;
+    private final long retainGames;
+
+    /**
+     * The lock file of the directory and the lock held on it.
+     */
+    private FileChannel lockChannel;
+    private FileLock lock;
+
+    /**
+     * The index file and its mapping.
+     */
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+
+    /**
+     * The log of the current generation.
+     */
+    private FileChannel log;
+
+    /**
+     * The players by rank.
+     */
+    private final TreeSet<Rank> ranking = new TreeSet<>(RANKING);
+
+    /**
+     * Opens (or creates) the leaderboard in a directory.
+     * @param directory   - the directory of the leaderboard.
+     * @param retainGames - the number of the latest results kept in the log by compaction.
+     */
+    public Leaderboard(Path directory, long retainGames) throws IOException {
+        this.directory = directory;
+        this.retainGames = Math.max(1, retainGames);
+        Files.createDirectories(directory);
+        lock();
+
+        Path indexFile = directory.resolve("index.bin");
+        if (!Files.exists(indexFile)) createIndex(indexFile, INITIAL_CAPACITY);
+        mapIndex(indexFile);
+        if (index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+            close();
+            throw new IOException("not a leaderboard index: " + indexFile);
+        }
+        deleteOtherLogs();
+        log = FileChannel.open(logFile(index.getLong(GENERATION)), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replay();
+        for (int entry = 0; entry < capacity(); entry++)
+            if (index.getLong(offset(entry) + HASH) != 0) ranking.add(rank(entry));
+    }
+
+    /**
+     * Prints the top of a leaderboard, or the standing of a player.
+     *
+     * @param args - the leaderboard directory (leaderboard if not given), then the number of players to print (10
+     *             if not given) or the name of a player.
+     */
+    public static void main(String[] args) {
+        Path directory = Paths.get(args.length > 0 ? args[0] : "leaderboard");
+        String query = args.length > 1 ? String.join(" ", Arrays.copyOfRange(args, 1, args.length)) : "10";
+        try (Leaderboard leaderboard = new Leaderboard(directory, Long.MAX_VALUE)) {
+            System.out.println(leaderboard.games() + " games recorded");
+            if (query.matches("\\d+")) {
+                int place = 0;
+                for (Standing standing : leaderboard.top(Integer.parseInt(query)))
+                    System.out.println(String.format("%3d. ", ++place) + standing);
+            } else {
+                Standing standing = leaderboard.standing(query);
+                System.out.println(standing == null ? "no games of " + query : standing.toString());
+            }
+        } catch (IOException e) {
+            System.out.println("Cannot read the leaderboard: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return - the number of games recorded.
+     */
+    public synchronized long games() {
+        return index.getLong(GAMES);
+    }
+
+    /**
+     * Records the result of a game - appends it to the log and adds it to the totals of its players.
+     * @param result - the result of the game.
+     */
+    public synchronized void record(GameResult result) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 32 * result.names.length);
+        result.writeTo(new DataOutputStream(bytes));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        long end = index.getLong(LOG_OFFSET);
+        while (buffer.hasRemaining()) end += log.write(buffer, end);
+
+        // the length of the log first, so the result is never replayed into the totals again (see the class doc)
+        index.putLong(LOG_GAMES, index.getLong(LOG_GAMES) + 1);
+        index.putLong(LOG_OFFSET, end);
+        apply(result);
+        if (index.getLong(LOG_GAMES) - retainGames >= retainGames) compact();
+    }
+
+    /**
+     * @param name - the name of the player.
+     * @return - the totals of the player, or null if he did not play.
+     */
+    public synchronized Standing standing(String name) {
+        int entry = find(key(name));
+        return entry < 0 ? null : standing(entry);
+    }
+
+    /**
+     * @param n - the number of players.
+     * @return - the n players with the most wins (by total score on a tie).
+     */
+    public synchronized List<Standing> top(int n) {
+        List<Standing> top = new ArrayList<>(Math.min(n, ranking.size()));
+        for (Rank rank : ranking) {
+            if (top.size() == n) break;
+            top.add(standing(find(key(rank.name))));
+        }
+        return top;
+    }
+
+    /**
+     * Adds a result to the totals of its players.
+     */
+    private void apply(GameResult result) throws IOException {
+        index.putLong(GAMES, index.getLong(GAMES) + 1);
+        for (int player = 0; player < result.names.length; player++) {
+            int entry = insert(key(result.names[player]));
+            int offset = offset(entry);
+            ranking.remove(rank(entry));
+            index.putLong(offset + PLAYED, index.getLong(offset + PLAYED) + 1);
+            if (result.isWinner(player)) index.putLong(offset + WINS, index.getLong(offset + WINS) + 1);
+            index.putLong(offset + SCORE, index.getLong(offset + SCORE) + result.scores[player]);
+            index.putLong(offset + PENALTIES, index.getLong(offset + PENALTIES) + result.penalties[player]);
+            index.putLong(offset + CLAIMS, index.getLong(offset + CLAIMS) + result.claims[player]);
+            index.putLong(offset + CLAIM_MICROS, index.getLong(offset + CLAIM_MICROS) + result.claimMicros[player]);
+            ranking.add(rank(entry));
+        }
+    }
+
+    /**
+     * Adds the results at the end of the log that are not in the index yet, and cuts off a partly written result.
+     */
+    private void replay() throws IOException {
+        long start = index.getLong(LOG_OFFSET);
+        long length = log.size();
+        if (length <= start) return;
+        ByteBuffer tail = ByteBuffer.allocate((int) (length - start));
+        while (tail.hasRemaining() && log.read(tail, start + tail.position()) >= 0) ;
+        ByteArrayInputStream bytes = new ByteArrayInputStream(tail.array());
+        DataInputStream in = new DataInputStream(bytes);
+        long end = start;
+        try {
+            while (bytes.available() > 0) {
+                GameResult result = GameResult.readFrom(in);
+                if (result == null) break;
+                end = length - bytes.available();
+                index.putLong(LOG_GAMES, index.getLong(LOG_GAMES) + 1);
+                index.putLong(LOG_OFFSET, end);
+                apply(result);
+            }
+        } catch (EOFException | RuntimeException e) {
+            // the last result was not completely written
+        }
+        log.truncate(end);
+    }
+
+    /**
+     * Moves the latest retainGames results to the log of the next generation and deletes the old log.
+     */
+    private void compact() throws IOException {
+        long generation = index.getLong(GENERATION);
+        long games = index.getLong(LOG_GAMES);
+        long length = index.getLong(LOG_OFFSET);
+
+        // find where the retained results start
+        long skip = Math.max(0, games - retainGames);
+        long from = 0;
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(logFile(generation)), 1 << 16)) {
+            CountingInput counting = new CountingInput(stream);
+            DataInputStream in = new DataInputStream(counting);
+            for (long i = 0; i < skip; i++) GameResult.readFrom(in);
+            from = counting.count;
+        } catch (EOFException e) {
+            from = length;
+        }
+
+        Path next = logFile(generation + 1);
+        try (FileChannel out = FileChannel.open(next, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            long position = from;
+            while (position < length) position += log.transferTo(position, length - position, out);
+            out.force(true);
+        }
+        // the index moves to the new log before the old one is deleted - a crash in between leaves a stray log only
+        index.putLong(GENERATION, generation + 1);
+        index.putLong(LOG_OFFSET, length - from);
+        index.putLong(LOG_GAMES, games - skip);
+        index.force();
+        log.close();
+        Files.deleteIfExists(logFile(generation));
+        log = FileChannel.open(next, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Finds the entry of a player.
+     * @param key - the name of the player (see key).
+     * @return - the entry of the player, or -(the empty entry his probe sequence ended at + 1) if he is not in the index.
+     */
+    private int probe(byte[] key) {
+        long hash = hash(key);
+        int mask = capacity() - 1;
+        for (int entry = (int) (hash ^ (hash >>> 32)) & mask; ; entry = (entry + 1) & mask) {
+            long stored = index.getLong(offset(entry) + HASH);
+            if (stored == 0) return -(entry + 1);
+            if (stored == hash && nameMatches(offset(entry), key)) return entry;
+        }
+    }
+
+    /**
+     * @param key - the name of the player (see key).
+     * @return - the entry of the player, or -1 if he is not in the index.
+     */
+    private int find(byte[] key) {
+        int entry = probe(key);
+        return entry < 0 ? -1 : entry;
+    }
+
+    /**
+     * @param key - the name of the player (see key).
+     * @return - the entry of the player (added to the index if he is not in it).
+     */
+    private int insert(byte[] key) throws IOException {
+        int entry = probe(key);
+        if (entry >= 0) return entry;
+        if (2 * (index.getInt(SIZE) + 1) > capacity()) {
+            grow();
+            entry = probe(key);
+        }
+        entry = -entry - 1;
+        int offset = offset(entry);
+        index.putShort(offset + NAME_LENGTH, (short) key.length);
+        for (int i = 0; i < key.length; i++) index.put(offset + NAME + i, key[i]);
+        index.putLong(offset + HASH, hash(key));
+        index.putInt(SIZE, index.getInt(SIZE) + 1);
+        return entry;
+    }
+
+    /**
+     * Doubles the capacity of the index (into a new file that replaces it).
+     */
+    private void grow() throws IOException {
+        Path indexFile = directory.resolve("index.bin");
+        Path grown = directory.resolve("index.tmp");
+        int capacity = capacity() * 2;
+        createIndex(grown, capacity);
+        try (FileChannel channel = FileChannel.open(grown, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer target = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * ENTRY_BYTES);
+            for (int i = 0; i < HEADER_BYTES; i++) target.put(i, index.get(i));
+            target.putInt(CAPACITY, capacity);
+            for (int entry = 0; entry < capacity(); entry++) {
+                int from = offset(entry);
+                long hash = index.getLong(from + HASH);
+                if (hash == 0) continue;
+                int to = (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+                while (target.getLong(offset(to) + HASH) != 0) to = (to + 1) & (capacity - 1);
+                for (int i = 0; i < ENTRY_BYTES; i++) target.put(offset(to) + i, index.get(from + i));
+            }
+            target.force();
+        }
+        indexChannel.close();
+        Files.move(grown, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        mapIndex(indexFile);
+    }
+
+    private static void createIndex(Path file, int capacity) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(0, MAGIC).putInt(4, VERSION).putInt(CAPACITY, capacity);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) channel.write(header);
+            channel.truncate(HEADER_BYTES);
+            // the entries are zeros (empty)
+            channel.write(ByteBuffer.allocate(1), HEADER_BYTES + (long) capacity * ENTRY_BYTES - 1);
+        }
+    }
+
+    /**
+     * Takes the lock of the directory.
+     * @throws IOException - if another leaderboard (of this process or another one) holds it.
+     */
+    private void lock() throws IOException {
+        Path lockFile = directory.resolve("leaderboard.lock");
+        lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("the leaderboard is in use by another process: " + lockFile);
+        }
+    }
+
+    private void mapIndex(Path file) throws IOException {
+        indexChannel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+    }
+
+    private void deleteOtherLogs() throws IOException {
+        Path current = logFile(index.getLong(GENERATION));
+        try (DirectoryStream<Path> logs = Files.newDirectoryStream(directory, "results-*.log")) {
+            for (Path file : logs) if (!file.equals(current)) Files.delete(file);
+        }
+    }
+
+    private Path logFile(long generation) {
+        return directory.resolve("results-" + generation + ".log");
+    }
+
+    private int capacity() {
+        return index.getInt(CAPACITY);
+    }
+
+    private static int offset(int entry) {
+        return HEADER_BYTES + entry * ENTRY_BYTES;
+    }
+
+    private Rank rank(int entry) {
+        int offset = offset(entry);
+        return new Rank(name(offset), index.getLong(offset + WINS), index.getLong(offset + SCORE));
+    }
+
+    private Standing standing(int entry) {
+        int offset = offset(entry);
+        return new Standing(name(offset), index.getLong(offset + PLAYED), index.getLong(offset + WINS),
+                index.getLong(offset + SCORE), index.getLong(offset + PENALTIES), index.getLong(offset + CLAIMS),
+                index.getLong(offset + CLAIM_MICROS));
+    }
+
+    private String name(int offset) {
+        byte[] bytes = new byte[index.getShort(offset + NAME_LENGTH)];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = index.get(offset + NAME + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean nameMatches(int offset, byte[] key) {
+        if (index.getShort(offset + NAME_LENGTH) != key.length) return false;
+        for (int i = 0; i < key.length; i++) if (index.get(offset + NAME + i) != key[i]) return false;
+        return true;
+    }
+
+    private static byte[] key(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= MAX_NAME_BYTES ? bytes : Arrays.copyOf(bytes, MAX_NAME_BYTES);
+    }
+
+    /**
+     * @return - the FNV-1a hash of a name (never 0, which marks an empty entry).
+     */
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Writes the index and the log to the disk and closes them.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (index != null) index.force();
+            if (log != null) {
+                log.force(true);
+                log.close();
+            }
+        } finally {
+            try {
+                if (indexChannel != null) indexChannel.close();
+            } finally {
+                // closing the channel releases the lock
+                if (lockChannel != null) lockChannel.close();
+            }
+        }
+    }
+
+    /**
+     * An input stream that counts the bytes read through it.
+     */
+    private static final class CountingInput extends FilterInputStream {
+        long count;
+
+        CountingInput(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
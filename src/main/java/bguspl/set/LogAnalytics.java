@@ -0,0 +1,510 @@
+package bguspl.set;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Analyses the game logs (see Main.setLoggerLevelAndFormat for the line format) and rebuilds the timeline of every
+ * game in them: the cards placed and removed, the tokens of every player, the countdown updates, the scores and the
+ * winners. The files are analysed in parallel; each one is memory-mapped and its lines are parsed in place, byte by
+ * byte, so no String is made for a line (only for the output). Compressed segments (see RollingLogHandler) are
+ * decompressed into memory and parsed the same way; a game that goes on in the next segment is counted as two.
+ *
+ * A game starts at its "game seed" line (a log of a single game run has one). Logs from before the seed was logged
+ * have no such line: there a game starts when the dealer thread starts, or at the start of the file. Lines that are
+ * not log lines (e.g. the rest of a multi-line message) are skipped.
+ */
+public class LogAnalytics {
+
+    /**
+     * The largest part of a file mapped at once.
+     */
+    private static final int WINDOW = 1 << 28;
+
+    /*
+     * The messages parsed (the beginning of each one)
+     */
+    private static final byte[] GAME_SEED = bytes("game seed ");
+    private static final byte[] DEALER_STARTING = bytes("thread dealer starting.");
+    private static final byte[] PLACING_CARD = bytes("placing card ");
+    private static final byte[] IN_SLOT = bytes(" in slot ");
+    private static final byte[] REMOVING_CARD = bytes("removing card from slot ");
+    private static final byte[] PLAYER = bytes("player ");
+    private static final byte[] PLACING_TOKEN = bytes(" placing token on slot ");
+    private static final byte[] REMOVING_PLAYER = bytes("removing player ");
+    private static final byte[] TOKEN_FROM_SLOT = bytes(" token from slot ");
+    private static final byte[] COUNTDOWN = bytes("updating countdown to ");
+    private static final byte[] ELAPSED = bytes("updating elapsed time to ");
+    private static final byte[] SETTING_PLAYER = bytes("setting player ");
+    private static final byte[] SCORE_TO = bytes(" score to ");
+    private static final byte[] WINNERS = bytes("announcing winner(s): ");
+    private static final byte[] RESTORED = bytes("restored checkpoint ");
+    private static final byte[] COMMA = bytes(", ");
+
+    /*
+     * The positions of the digits of "[HH:mm:ss.SSS]" and their weights in milliseconds
+     */
+    private static final int[] TIME_DIGITS = {1, 2, 4, 5, 7, 8, 10, 11, 12};
+    private static final long[] TIME_WEIGHTS = {36_000_000, 3_600_000, 600_000, 60_000, 10_000, 1_000, 100, 10, 1};
+
+    /*
+     * The events of a timeline
+     */
+    static final byte CARD_PLACED = 0, CARD_REMOVED = 1, TOKEN_PLACED = 2, TOKEN_REMOVED = 3, COUNTDOWN_UPDATED = 4,
+            SCORE_CHANGED = 5, WINNER = 6;
+    private static final String[] EVENT_NAMES = {"card placed", "card removed", "token placed", "token removed",
+            "countdown", "score", "winner"};
+
+    /**
+     * The timeline and the totals of a single game.
+     */
+    static final class Game {
+        final String file;
+        final int number;
+        long seed;
+        boolean seeded;
+        boolean hasEvents;
+        long startMillis = -1;
+        long endMillis;
+        int cardsPlaced, cardsRemoved, cardsOnTable, emptied, countdownUpdates, sets;
+        int[] tokensPlaced = new int[0];
+        int[] tokensRemoved = new int[0];
+        int[] scores = new int[0];
+        int[] winners = new int[0];
+
+        /*
+         * The events (kept only if timelines are written): time since the start, type, player (or -1) and value
+         */
+        final boolean keepEvents;
+        int events;
+        long[] times = new long[0];
+        byte[] types = new byte[0];
+        int[] players = new int[0];
+        int[] values = new int[0];
+
+        Game(String file, int number, boolean keepEvents) {
+            this.file = file;
+            this.number = number;
+            this.keepEvents = keepEvents;
+        }
+
+        void event(long millis, byte type, int player, int value) {
+            hasEvents = true;
+            if (startMillis < 0) startMillis = millis;
+            endMillis = millis;
+            if (!keepEvents) return;
+            if (events == times.length) {
+                int length = Math.max(256, events * 2);
+                times = Arrays.copyOf(times, length);
+                types = Arrays.copyOf(types, length);
+                players = Arrays.copyOf(players, length);
+                values = Arrays.copyOf(values, length);
+            }
+            times[events] = millis - startMillis;
+            types[events] = type;
+            players[events] = player;
+            values[events] = value;
+            events++;
+        }
+
+        /**
+         * Grows the per player counters to hold the player.
+         */
+        void ensurePlayer(int player) {
+            if (player < tokensPlaced.length) return;
+            tokensPlaced = Arrays.copyOf(tokensPlaced, player + 1);
+            tokensRemoved = Arrays.copyOf(tokensRemoved, player + 1);
+            scores = Arrays.copyOf(scores, player + 1);
+        }
+
+        long durationMillis() {
+            return startMillis < 0 ? 0 : endMillis - startMillis;
+        }
+
+        /**
+         * @return - the number of reshuffles (the table emptied while the game went on - the last time it is emptied
+         * the game ended).
+         */
+        int reshuffles() {
+            return Math.max(0, emptied - (winners.length > 0 ? 1 : 0));
+        }
+
+        int tokensPlaced() {
+            return Arrays.stream(tokensPlaced).sum();
+        }
+
+        int tokensRemoved() {
+            return Arrays.stream(tokensRemoved).sum();
+        }
+    }
+
+    /**
+     * The position of the parser in the current line of the mapped window (a file is parsed by a single thread).
+     */
+    private static final class Cursor {
+        final ByteBuffer buffer;
+        int position;
+        int end;
+
+        Cursor(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        boolean match(byte[] pattern) {
+            if (end - position < pattern.length) return false;
+            for (int i = 0; i < pattern.length; i++)
+                if (buffer.get(position + i) != pattern[i]) return false;
+            position += pattern.length;
+            return true;
+        }
+
+        /**
+         * @return - the number at the position (-1 if there is none).
+         */
+        long number() {
+            boolean negative = position < end && buffer.get(position) == '-';
+            if (negative) position++;
+            long value = 0;
+            int start = position;
+            while (position < end) {
+                int digit = buffer.get(position) - '0';
+                if (digit < 0 || digit > 9) break;
+                value = value * 10 + digit;
+                position++;
+            }
+            if (position == start) return -1;
+            return negative ? -value : value;
+        }
+    }
+
+    private final Path directory;
+    private final Path output;
+
+    /**
+     * @param directory - the directory of the logs.
+     * @param output    - the directory the results are written to (null to only print the totals).
+     */
+    public LogAnalytics(Path directory, Path output) {
+        this.directory = directory;
+        this.output = output;
+    }
+
+    /**
+     * The log analytics main function.
+     *
+     * @param args - the directory of the logs (logs if not given) and the directory to write the results of every
+     *             game and their timelines to (none if not given).
+     */
+    public static void main(String[] args) {
+        Path directory = Paths.get(args.length > 0 ? args[0] : "logs");
+        Path output = args.length > 1 ? Paths.get(args[1]) : null;
+        try {
+            new LogAnalytics(directory, output).run();
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Cannot analyse the logs: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Analyses all the logs in the directory and prints the totals.
+     */
+    public void run() throws IOException {
+        long start = System.nanoTime();
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            // the largest files first, so the last files analysed in parallel are small
+            files = list.filter(file -> (file.toString().endsWith(".log") || file.toString().endsWith(".log.gz"))
+                            && Files.isRegularFile(file))
+                    .sorted(Comparator.comparingLong(LogAnalytics::size).reversed()).collect(Collectors.toList());
+        }
+        long bytes = files.stream().mapToLong(LogAnalytics::size).sum();
+        boolean timelines = output != null;
+        List<Game> games = files.parallelStream().flatMap(file -> {
+            try {
+                return analyse(file, timelines).stream();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).collect(Collectors.toList());
+        games.sort(Comparator.comparing((Game game) -> game.file).thenComparingInt(game -> game.number));
+
+        if (output != null) write(games);
+        for (String line : summary(games, files.size(), bytes, System.nanoTime() - start)) System.out.println(line);
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Analyses a single log.
+     * @param file      - the log file.
+     * @param timelines - true iff the events of the games should be kept.
+     * @return - the games in the log.
+     */
+    static List<Game> analyse(Path file, boolean timelines) throws IOException {
+        Reader reader = new Reader(file.getFileName().toString(), timelines);
+        if (file.toString().endsWith(".gz")) {
+            // a compressed segment is read whole (segments are small)
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file), 1 << 16)) {
+                byte[] buffer = new byte[1 << 16];
+                for (int n; (n = in.read(buffer)) > 0; ) bytes.write(buffer, 0, n);
+            }
+            reader.parse(ByteBuffer.wrap(bytes.toByteArray()), bytes.size(), true);
+            return reader.games;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long offset = 0;
+            while (offset < size) {
+                int length = (int) Math.min(WINDOW, size - offset);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                offset += reader.parse(buffer, length, offset + length == size);
+            }
+        }
+        return reader.games;
+    }
+
+    /**
+     * The state of the analysis of a single file (used by a single thread).
+     */
+    private static final class Reader {
+        final String name;
+        final boolean timelines;
+        final List<Game> games = new ArrayList<>();
+        long dayOffset;
+        long lastMillis;
+
+        /**
+         * The current game (at the start of the file, a game that is added to the games at its first event).
+         */
+        Game game;
+
+        Reader(String name, boolean timelines) {
+            this.name = name;
+            this.timelines = timelines;
+            game = new Game(name, 0, timelines);
+        }
+
+        /**
+         * Starts the next game of the file.
+         */
+        void start(long millis) {
+            game = new Game(name, games.size(), timelines);
+            game.startMillis = game.endMillis = millis;
+            games.add(game);
+        }
+
+        /**
+         * Parses the lines of a part of the file.
+         * @param buffer - the part of the file.
+         * @param length - the number of bytes in the part.
+         * @param last   - true iff the part is the end of the file.
+         * @return - the number of bytes parsed (a line cut by the end of the part is parsed with the next part).
+         */
+        int parse(ByteBuffer buffer, int length, boolean last) {
+            Cursor cursor = new Cursor(buffer);
+            int position = 0;
+            while (position < length) {
+                int lineEnd = position;
+                while (lineEnd < length && buffer.get(lineEnd) != '\n') lineEnd++;
+                if (lineEnd == length && !last && position > 0) break;
+                cursor.end = lineEnd > position && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                cursor.position = position;
+                long millis = timestamp(cursor);
+                if (millis >= 0 && skipLevel(cursor)) {
+                    // the logs have the time of day only - a game past midnight goes on to the next day
+                    if (millis + dayOffset < lastMillis - 12 * 3_600_000L) dayOffset += 24 * 3_600_000L;
+                    lastMillis = millis + dayOffset;
+                    if (cursor.match(GAME_SEED)) {
+                        start(lastMillis);
+                        game.seed = cursor.number();
+                        game.seeded = true;
+                    } else if (cursor.match(DEALER_STARTING)) {
+                        // a game of a log with no seed lines (a seeded game is logged before its dealer starts)
+                        if (game.hasEvents) start(lastMillis);
+                        else if (!game.seeded) game.startMillis = game.endMillis = lastMillis;
+                    } else {
+                        LogAnalytics.parse(cursor, game, lastMillis);
+                        if (games.isEmpty() && game.hasEvents) games.add(game);
+                    }
+                }
+                position = lineEnd + 1;
+            }
+            return Math.min(position, length);
+        }
+    }
+
+    /**
+     * Parses the "[HH:mm:ss.SSS] " prefix of a line.
+     * @return - the milliseconds since midnight, or -1 if the line has no time.
+     */
+    private static long timestamp(Cursor cursor) {
+        int p = cursor.position;
+        if (cursor.end - p < 15 || cursor.buffer.get(p) != '[' || cursor.buffer.get(p + 13) != ']') return -1;
+        long millis = 0;
+        for (int i = 0; i < TIME_DIGITS.length; i++) {
+            int digit = cursor.buffer.get(p + TIME_DIGITS[i]) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            millis += digit * TIME_WEIGHTS[i];
+        }
+        cursor.position = p + 15;
+        return millis;
+    }
+
+    /**
+     * Skips the "[LEVEL] " part of a line.
+     * @return - true iff the line has a level.
+     */
+    private static boolean skipLevel(Cursor cursor) {
+        if (cursor.position >= cursor.end || cursor.buffer.get(cursor.position) != '[') return false;
+        while (cursor.position < cursor.end && cursor.buffer.get(cursor.position) != ']') cursor.position++;
+        cursor.position += 2;
+        return cursor.position <= cursor.end;
+    }
+
+    /**
+     * Parses the message of a line of a game.
+     */
+    private static void parse(Cursor cursor, Game game, long millis) {
+        if (cursor.match(PLACING_CARD)) {
+            int card = (int) cursor.number();
+            if (!cursor.match(IN_SLOT)) return;
+            game.cardsPlaced++;
+            game.cardsOnTable++;
+            game.event(millis, CARD_PLACED, (int) cursor.number(), card);
+        } else if (cursor.match(REMOVING_CARD)) {
+            game.cardsRemoved++;
+            if (--game.cardsOnTable == 0) game.emptied++;
+            game.event(millis, CARD_REMOVED, -1, (int) cursor.number());
+        } else if (cursor.match(PLAYER)) {
+            int player = (int) cursor.number() - 1;
+            if (player < 0 || !cursor.match(PLACING_TOKEN)) return;
+            game.ensurePlayer(player);
+            game.tokensPlaced[player]++;
+            game.event(millis, TOKEN_PLACED, player, (int) cursor.number());
+        } else if (cursor.match(REMOVING_PLAYER)) {
+            int player = (int) cursor.number() - 1;
+            if (player < 0 || !cursor.match(TOKEN_FROM_SLOT)) return;
+            game.ensurePlayer(player);
+            game.tokensRemoved[player]++;
+            game.event(millis, TOKEN_REMOVED, player, (int) cursor.number());
+        } else if (cursor.match(COUNTDOWN) || cursor.match(ELAPSED)) {
+            game.countdownUpdates++;
+            game.event(millis, COUNTDOWN_UPDATED, -1, (int) cursor.number());
+        } else if (cursor.match(SETTING_PLAYER)) {
+            int player = (int) cursor.number() - 1;
+            if (player < 0 || !cursor.match(SCORE_TO)) return;
+            game.ensurePlayer(player);
+            int score = (int) cursor.number();
+            if (score == game.scores[player] + 1) game.sets++;
+            game.scores[player] = score;
+            game.event(millis, SCORE_CHANGED, player, score);
+        } else if (cursor.match(RESTORED)) {
+            // the game was restored before it started - the cards, tokens and scores so far are the saved ones
+            game.cardsPlaced = game.sets = 0;
+            Arrays.fill(game.tokensPlaced, 0);
+        } else if (cursor.match(WINNERS)) {
+            int[] winners = new int[4];
+            int count = 0;
+            while (cursor.match(PLAYER)) {
+                if (count == winners.length) winners = Arrays.copyOf(winners, count * 2);
+                winners[count] = (int) cursor.number() - 1;
+                game.event(millis, WINNER, winners[count], 0);
+                count++;
+                cursor.match(COMMA);
+            }
+            game.winners = Arrays.copyOf(winners, count);
+        }
+    }
+
+    /**
+     * Writes the totals of every game (games.csv) and its timeline (timelines/[log]-[game].csv).
+     */
+    private void write(List<Game> games) throws IOException {
+        Files.createDirectories(output.resolve("timelines"));
+        try (BufferedWriter out = Files.newBufferedWriter(output.resolve("games.csv"), StandardCharsets.UTF_8)) {
+            out.write("file,game,seed,durationSeconds,cardsPlaced,cardsRemoved,sets,setsPerMinute,reshuffles,"
+                    + "tokensPlaced,tokensRemoved,countdownUpdates,winners");
+            out.newLine();
+            for (Game game : games) {
+                out.write(String.format("%s,%d,%s,%.3f,%d,%d,%d,%.2f,%d,%d,%d,%d,%s", game.file, game.number,
+                        game.seeded ? String.valueOf(game.seed) : "",
+                        game.durationMillis() / 1000.0, game.cardsPlaced, game.cardsRemoved, game.sets,
+                        perMinute(game.sets, game.durationMillis()), game.reshuffles(), game.tokensPlaced(),
+                        game.tokensRemoved(), game.countdownUpdates, Arrays.stream(game.winners)
+                                .mapToObj(player -> String.valueOf(player + 1)).collect(Collectors.joining(" "))));
+                out.newLine();
+            }
+        }
+        for (Game game : games) {
+            String name = game.file.replaceAll("\\.log(\\.gz)?$", "") + "-" + game.number + ".csv";
+            try (BufferedWriter out = Files.newBufferedWriter(output.resolve("timelines").resolve(name), StandardCharsets.UTF_8)) {
+                out.write("millis,event,player,value");
+                out.newLine();
+                for (int i = 0; i < game.events; i++) {
+                    out.write(game.times[i] + "," + EVENT_NAMES[game.types[i]] + ","
+                            + (game.players[i] < 0 ? "" : String.valueOf(game.players[i] + 1)) + "," + game.values[i]);
+                    out.newLine();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return - the lines of the totals of all the games.
+     */
+    static List<String> summary(List<Game> games, int files, long bytes, long nanos) {
+        long duration = 0, sets = 0, reshuffles = 0, tokensPlaced = 0, tokensRemoved = 0, countdowns = 0, cards = 0;
+        for (Game game : games) {
+            duration += game.durationMillis();
+            sets += game.sets;
+            reshuffles += game.reshuffles();
+            tokensPlaced += game.tokensPlaced();
+            tokensRemoved += game.tokensRemoved();
+            countdowns += game.countdownUpdates;
+            cards += game.cardsPlaced;
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("analysed %d files (%.1f MB) in %.2f seconds: %d games, %.1f minutes of play",
+                files, bytes / 1048576.0, nanos / 1e9, games.size(), duration / 60000.0));
+        lines.add(String.format("sets: %d (%.2f per minute)", sets, perMinute(sets, duration)));
+        lines.add(String.format("reshuffles: %d (%.2f per game, %.2f per minute)", reshuffles,
+                games.isEmpty() ? 0 : (double) reshuffles / games.size(), perMinute(reshuffles, duration)));
+        lines.add(String.format("cards placed: %d, countdown updates: %d", cards, countdowns));
+        lines.add(String.format("token churn: %d placed, %d removed (%.2f placed per set)", tokensPlaced, tokensRemoved,
+                sets == 0 ? 0 : (double) tokensPlaced / sets));
+        return lines;
+    }
+
+    private static double perMinute(long count, long millis) {
+        return millis == 0 ? 0 : count * 60000.0 / millis;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,11 +1,16 @@
 package bguspl.set;
 
 import bguspl.set.ex.Dealer;
+import bguspl.set.ex.GameCheckpoint;
 import bguspl.set.ex.Player;
 import bguspl.set.ex.Table;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -33,17 +38,38 @@ public class Main {
     /**
      * The game's main function. Creates all data structures and initializes the threads.
      *
-     * @param args - unused.
+     * @param args - "--tournament [settings file]" to run a tournament instead of a single game (see Tournament), or
+     *             "--coordinator [settings file]" to run it across several worker processes (see Coordinator), or
+     *             "--restore" to resume the game from its last checkpoint (see CheckpointFile in the config), or
+     *             "--leaderboard [directory] [count | player name]" to print the leaderboard (see Leaderboard), or
+     *             "--analyze [logs directory] [output directory]" to analyse the game logs (see LogAnalytics).
      */
     public static void main(String[] args) {
 
+        if (args.length > 0 && args[0].equals("--tournament")) {
+            Tournament.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--coordinator")) {
+            Coordinator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--leaderboard")) {
+            Leaderboard.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--analyze")) {
+            LogAnalytics.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         mainThread = Thread.currentThread();
 
         // create the game environment objects
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
         Config config = new Config(logger, "config.properties");
-        Util util = new UtilImpl(config);
+        Util util = new UtilImpl(config, loadCatalog(config));
 
         Player[] players = new Player[config.players];
         UserInterface ui = null;
@@ -51,9 +77,10 @@ public class Main {
             ui = new UserInterfaceSwing(logger, config, players);
         } catch (UnsupportedOperationException | IllegalArgumentException e) {
             logger.severe("error creating swing user interface: " + e.getMessage());
-            logger.severe("will try to run without user interface");
+            logger.severe("will draw the game on the terminal instead");
             if (config.humanPlayers > 0)
-                logger.severe("warning: running with human players with no user interface");
+                logger.severe("warning: running with human players with no keyboard input");
+            ui = new UserInterfaceTerminal(logger, config, util, System.out);
         }
         ui = new UserInterfaceDecorator(logger, util, ui);
 
@@ -64,34 +91,94 @@ public class Main {
         dealer = new Dealer(env, table, players);
         for (int i = 0; i < players.length; i++)
             players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
+        if (args.length > 0 && args[0].equals("--restore")) restore(config, dealer);
 
         // start the dealer thread
+        long start = System.currentTimeMillis();
         ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
         dealerThread.startWithLog();
 
         try {
             // shutdown stuff
             dealerThread.joinWithLog();
+            if (!xButtonPressed && !config.leaderboardDirectory.isEmpty()) record(config, dealer, players, start);
             if (!xButtonPressed && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
         } catch (InterruptedException ignored) {
         } finally {
             logger.severe("thanks for playing... it was fun!");
-            System.out.println("Thanks for playing... it was fun!");
+            env.metrics.report(logger);
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
             if (!xButtonPressed) env.ui.dispose();
+            // after the last frame of a user interface drawing on the console
+            System.out.println("Thanks for playing... it was fun!");
             for (Handler h : logger.getHandlers()) h.flush();
         }
     }
 
-    private static Logger initLogger() {
+    /**
+     * Records the result of the game in the leaderboard and writes the top of the leaderboard to the log.
+     */
+    private static void record(Config config, Dealer dealer, Player[] players, long start) {
+        try (Leaderboard leaderboard = new Leaderboard(Paths.get(config.leaderboardDirectory), config.leaderboardRetainGames)) {
+            int[] scores = new int[players.length], penalties = new int[players.length], claims = new int[players.length];
+            long[] claimMicros = new long[players.length];
+            for (int i = 0; i < players.length; i++) {
+                scores[i] = dealer.score(i);
+                penalties[i] = dealer.penalties(i);
+                claims[i] = dealer.claims(i);
+                claimMicros[i] = dealer.claimLatencyMicros(i);
+            }
+            leaderboard.record(new GameResult((int) leaderboard.games(), dealer.seed(), System.currentTimeMillis() - start,
+                    false, config.playerNames.clone(), scores, penalties, claims, claimMicros));
+            int place = 0;
+            for (Leaderboard.Standing standing : leaderboard.top(5))
+                logger.info("leaderboard " + ++place + ". " + standing);
+        } catch (IOException | InvalidPathException e) {
+            logger.severe("error recording the game in the leaderboard: " + e.getMessage());
+        }
+    }
+
+    private static void restore(Config config, Dealer dealer) {
+        try {
+            GameCheckpoint checkpoint = GameCheckpoint.load(Paths.get(config.checkpointFile));
+            if (checkpoint == null) logger.severe("no checkpoint to restore, starting a new game");
+            else dealer.restore(checkpoint);
+        } catch (IOException | InvalidPathException e) {
+            logger.severe("error loading the checkpoint: " + e.getMessage());
+            logger.severe("starting a new game");
+        }
+    }
+
+    private static SetCatalog loadCatalog(Config config) {
+        if (config.setCatalogDirectory.isEmpty()) return null;
+        try {
+            return SetCatalog.load(Paths.get(config.setCatalogDirectory), config.featureSize, config.featureCount);
+        } catch (IOException | InvalidPathException e) {
+            logger.severe("error loading the card catalog: " + e.getMessage());
+            logger.severe("will compute the card features instead");
+            return null;
+        }
+    }
+
+    static Logger initLogger() {
 
         //just to make our log file nicer :)
         SimpleDateFormat format = new SimpleDateFormat("M-d_HH-mm-ss");
-        FileHandler handler;
+        RollingLogHandler handler;
         try {
-            //noinspection ResultOfMethodCallIgnored
-            new File("./logs/").mkdirs();
-            handler = new FileHandler("./logs/" + format.format(Calendar.getInstance().getTime()) + ".log");
+            Path directory = Paths.get("./logs/");
+            Files.createDirectories(directory);
+            // runs started in the same second get a number
+            String run = format.format(Calendar.getInstance().getTime());
+            for (int i = 2; ; i++) {
+                try {
+                    Files.createFile(directory.resolve(run + ".log"));
+                    break;
+                } catch (FileAlreadyExistsException e) {
+                    run = format.format(Calendar.getInstance().getTime()) + "_" + i;
+                }
+            }
+            handler = new RollingLogHandler(directory, run, 8192);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
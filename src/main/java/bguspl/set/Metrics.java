@@ -0,0 +1,75 @@
+package bguspl.set;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * This class holds the named metrics of a game: counters (events counted by many threads) and gauges (values set by
+ * the component measuring them). Any thread can update or read the metrics without blocking.
+ */
+public class Metrics {
+
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Adds one to a counter.
+     * @param name - the name of the counter.
+     */
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Adds to a counter.
+     * @param name  - the name of the counter.
+     * @param delta - the amount to add.
+     */
+    public void add(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Sets a gauge.
+     * @param name  - the name of the gauge.
+     * @param value - the current value.
+     */
+    public void set(String name, long value) {
+        gauges.computeIfAbsent(name, key -> new AtomicLong()).set(value);
+    }
+
+    /**
+     * @param name - the name of a counter or a gauge.
+     * @return - its current value (0 if it was never updated).
+     */
+    public long get(String name) {
+        LongAdder counter = counters.get(name);
+        if (counter != null) return counter.sum();
+        AtomicLong gauge = gauges.get(name);
+        return gauge == null ? 0 : gauge.get();
+    }
+
+    /**
+     * @return - the current values of all the metrics, by name.
+     */
+    public SortedMap<String, Long> snapshot() {
+        SortedMap<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.get()));
+        return values;
+    }
+
+    /**
+     * Writes the current values of all the metrics to the log.
+     * @param logger - the logger.
+     */
+    public void report(Logger logger) {
+        for (Map.Entry<String, Long> metric : snapshot().entrySet())
+            logger.info("metric " + metric.getKey() + " = " + metric.getValue());
+    }
+}
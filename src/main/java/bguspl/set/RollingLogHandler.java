@@ -0,0 +1,336 @@
+package bguspl.set;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A log handler that writes the log of a run to size-capped segments in the log directory, off the logging threads.
+ * Logging only puts the record in a bounded queue (a record that does not fit is dropped and counted); a writer
+ * thread formats the records and writes them to the active segment, [run].log, in batches. When the segment reaches
+ * its size it is renamed to [run].[n].log, a new one is started, and the closed segment is compressed to
+ * [run].[n].log.gz by a low priority compressor thread. Then the oldest segments of the run are deleted until the run
+ * is within the retention limits - the number of segments, their total size and their age.
+ * Only the segments of the run are ever compressed or deleted: the logs of other runs (and the history kept in the
+ * directory) are left as they are.
+ */
+public class RollingLogHandler extends Handler {
+
+    /**
+     * The directory of the logs and the name of the run (the base name of its segments).
+     */
+    private final Path directory;
+    private final String run;
+
+    /*
+     * The settings (see configure)
+     */
+    private volatile long segmentBytes = 16L << 20;
+    private volatile int maxFiles = 100;
+    private volatile long maxTotalBytes = 512L << 20;
+    private volatile long retentionMillis = 30L * 24 * 3_600_000;
+    private volatile boolean compress = true;
+
+    /**
+     * The records waiting for the writer.
+     */
+    private final BlockingQueue<LogRecord> queue;
+
+    /**
+     * The number of records accepted and dropped, and the number of records written (guarded by this for waiting).
+     */
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long written;
+
+    /*
+     * The active segment, its size and the number of the next closed segment (used only by the writer thread)
+     */
+    private Writer out;
+    private long size;
+    private int segment = 1;
+
+    private final Thread writer;
+    private final ExecutorService compressor;
+    private volatile boolean closed;
+
+    /**
+     * @param directory - the directory of the logs.
+     * @param run       - the name of the run (unique in the directory).
+     * @param queueSize - the number of records that can wait for the writer.
+     */
+    public RollingLogHandler(Path directory, String run, int queueSize) throws IOException {
+        this.directory = directory;
+        this.run = run;
+        this.queue = new ArrayBlockingQueue<>(Math.max(16, queueSize));
+        setFormatter(new SimpleFormatter());
+        Files.createDirectories(directory);
+        // a run that goes on with its log numbers its segments after the ones it has
+        for (Path file : segments()) segment = Math.max(segment, segmentNumber(file) + 1);
+        open();
+
+        compressor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "log-compressor");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        writer = new Thread(this::write, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Sets the rotation and retention settings, and compresses the closed segments of the run left uncompressed (in
+     * the background).
+     * @param segmentBytes    - the size of a segment (0 for no rotation).
+     * @param maxFiles        - the number of segments of the run kept (0 for no limit).
+     * @param maxTotalBytes   - the total size of the segments of the run kept (0 for no limit).
+     * @param retentionMillis - the age after which a closed segment is deleted (0 for no limit).
+     * @param compress        - true iff closed segments should be compressed.
+     */
+    public void configure(long segmentBytes, int maxFiles, long maxTotalBytes, long retentionMillis, boolean compress) {
+        this.segmentBytes = segmentBytes;
+        this.maxFiles = maxFiles;
+        this.maxTotalBytes = maxTotalBytes;
+        this.retentionMillis = retentionMillis;
+        this.compress = compress;
+        compressor.execute(() -> {
+            if (this.compress) for (Path file : segments()) if (file.toString().endsWith(".log")) compress(file);
+            retain();
+        });
+    }
+
+    /**
+     * Queues a record for the writer. Never blocks.
+     */
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) return;
+        if (queue.offer(record)) accepted.incrementAndGet();
+        else dropped.incrementAndGet();
+    }
+
+    /**
+     * Waits (a few seconds at most) until the records queued so far are written.
+     */
+    @Override
+    public void flush() {
+        long target = accepted.get();
+        long deadline = System.currentTimeMillis() + 5000;
+        synchronized (this) {
+            while (written < target && writer.isAlive()) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) break;
+                try {
+                    wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the queued records, stops the writer and waits (a few seconds at most) for the compressions.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        flush();
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join(5000);
+        } catch (InterruptedException ignored) {}
+        compressor.shutdown();
+        try {
+            compressor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {}
+    }
+
+    /**
+     * The writer thread starts here (writes the queued records in batches).
+     */
+    private void write() {
+        List<LogRecord> batch = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                if (queue.isEmpty()) break;
+            }
+            queue.drainTo(batch);
+            try {
+                long lost = dropped.getAndSet(0);
+                if (lost > 0) append("[log] " + lost + " records dropped - the log queue was full" + System.lineSeparator());
+                for (LogRecord record : batch) append(getFormatter().format(record));
+                out.flush();
+            } catch (IOException | RuntimeException e) {
+                reportError("error writing the log", e, ErrorManager.WRITE_FAILURE);
+            }
+            synchronized (this) {
+                written += batch.size();
+                notifyAll();
+            }
+            batch.clear();
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            reportError("error closing the log", e, ErrorManager.CLOSE_FAILURE);
+        }
+    }
+
+    private void append(String text) throws IOException {
+        out.write(text);
+        // the size is counted in chars (the logs are ASCII but for the player names)
+        size += text.length();
+        if (segmentBytes > 0 && size >= segmentBytes) rotate();
+    }
+
+    /**
+     * Closes the active segment and starts a new one.
+     */
+    private void rotate() throws IOException {
+        out.close();
+        Path closedSegment = directory.resolve(run + "." + segment++ + ".log");
+        Files.move(active(), closedSegment, StandardCopyOption.REPLACE_EXISTING);
+        open();
+        compressor.execute(() -> {
+            if (compress) compress(closedSegment);
+            retain();
+        });
+    }
+
+    private void open() throws IOException {
+        OutputStream stream = Files.newOutputStream(active(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+        size = Files.size(active());
+    }
+
+    private Path active() {
+        return directory.resolve(run + ".log");
+    }
+
+    /**
+     * Compresses a closed log file to [file].gz (through a temporary file, so a compression cut off leaves the file).
+     */
+    private void compress(Path file) {
+        Path compressed = file.resolveSibling(file.getFileName() + ".gz");
+        Path temporary = file.resolveSibling(file.getFileName() + ".gz.tmp");
+        try {
+            try (InputStream in = Files.newInputStream(file);
+                 OutputStream gzip = new GZIPOutputStream(Files.newOutputStream(temporary), 1 << 16)) {
+                byte[] buffer = new byte[1 << 16];
+                for (int n; (n = in.read(buffer)) > 0; ) gzip.write(buffer, 0, n);
+            }
+            // the compressed segment keeps the age of the segment (see retain)
+            Files.setLastModifiedTime(temporary, Files.getLastModifiedTime(file));
+            Files.move(temporary, compressed, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(file);
+        } catch (IOException e) {
+            reportError("error compressing " + file, e, ErrorManager.GENERIC_FAILURE);
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Deletes the oldest closed segments until the rest are within the retention limits (the active segment is kept).
+     */
+    private void retain() {
+        List<Path> files = segments();
+        long total = size(active());
+        for (Path file : files) total += size(file);
+        long now = System.currentTimeMillis();
+        int count = files.size() + 1;
+        for (Path file : files) {
+            boolean expired = retentionMillis > 0 && now - modified(file) > retentionMillis;
+            if (!expired && (maxFiles <= 0 || count <= maxFiles) && (maxTotalBytes <= 0 || total <= maxTotalBytes)) break;
+            long fileSize = size(file);
+            try {
+                Files.deleteIfExists(file);
+                total -= fileSize;
+                count--;
+            } catch (IOException e) {
+                reportError("error deleting " + file, e, ErrorManager.GENERIC_FAILURE);
+            }
+        }
+    }
+
+    /**
+     * @return - the closed segments of the run by number, compressed or not (and removes the leftovers of its cut off
+     * compressions).
+     */
+    private List<Path> segments() {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, file -> segmentNumber(file) >= 0)) {
+            for (Path file : stream) {
+                if (file.toString().endsWith(".gz.tmp")) Files.deleteIfExists(file);
+                else files.add(file);
+            }
+        } catch (IOException e) {
+            reportError("error listing the logs", e, ErrorManager.GENERIC_FAILURE);
+        }
+        files.sort(Comparator.comparingInt(this::segmentNumber));
+        return files;
+    }
+
+    /**
+     * @return - the number of a closed segment of the run ([run].[n].log, [run].[n].log.gz or the temporary file of
+     * its compression), or -1 if the file is not one.
+     */
+    private int segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(run + ".")) return -1;
+        int end = name.indexOf(".log", run.length() + 1);
+        if (end < 0) return -1;
+        String suffix = name.substring(end);
+        if (!suffix.equals(".log") && !suffix.equals(".log.gz") && !suffix.equals(".log.gz.tmp")) return -1;
+        String number = name.substring(run.length() + 1, end);
+        if (number.isEmpty() || number.length() > 9 || !number.chars().allMatch(Character::isDigit)) return -1;
+        return Integer.parseInt(number);
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long modified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A precomputed, read only catalog of the cards of a deck configuration (feature size and feature count).
+ * The catalog is built once, persisted to a binary file in a cache directory and memory mapped, so all the tables
+ * with the same configuration (in this process or in others) share it instead of recomputing it.
+ *
+ * File layout: a header of 4 ints (magic, version, feature size, feature count), the features of every card
+ * (deckSize * featureCount bytes) and, when the feature size is 3, the completion table (deckSize * deckSize ints):
+ * the card that completes each pair of cards to a legal set.
+ */
+public class SetCatalog {
+
+    private static final int MAGIC = 0x53455443;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+
+    /**
+     * The largest completion table to build (in entries).
+     */
+    private static final long MAX_COMPLETIONS = 1L << 25;
+
+    /**
+     * The catalogs already mapped by this process (by file).
+     */
+    private static final ConcurrentMap<Path, SetCatalog> catalogs = new ConcurrentHashMap<>();
+
+    private final int featureCount;
+    private final int deckSize;
+
+    /**
+     * The features of each card (featureCount consecutive bytes per card).
+     */
+    private final ByteBuffer features;
+
+    /**
+     * The card completing each pair of cards to a legal set (null if not in the catalog).
+     */
+    private final IntBuffer completions;
+
+    private SetCatalog(MappedByteBuffer buffer, int featureSize, int featureCount) {
+        this.featureCount = featureCount;
+        this.deckSize = (int) Math.pow(featureSize, featureCount);
+        buffer.position(HEADER_BYTES);
+        features = buffer.slice();
+        buffer.position(HEADER_BYTES + deckSize * featureCount);
+        completions = hasCompletions(featureSize, deckSize) ? buffer.slice().asIntBuffer() : null;
+    }
+
+    /**
+     * Returns the catalog of a deck configuration, building its file in the directory if it does not exist yet.
+     *
+     * @param directory    - the cache directory of the catalog files.
+     * @param featureSize  - the number of choices for each feature.
+     * @param featureCount - the number of features on the cards.
+     * @return - the mapped catalog.
+     * @throws IOException - if the catalog file cannot be built or read.
+     */
+    public static SetCatalog load(Path directory, int featureSize, int featureCount) throws IOException {
+        Path file = directory.resolve("cards-" + featureSize + "x" + featureCount + ".catalog").toAbsolutePath();
+        SetCatalog catalog = catalogs.get(file);
+        if (catalog != null) return catalog;
+
+        synchronized (catalogs) {
+            catalog = catalogs.get(file);
+            if (catalog == null) {
+                if (!isValid(file, featureSize, featureCount)) build(file, featureSize, featureCount);
+                catalog = new SetCatalog(map(file), featureSize, featureCount);
+                catalogs.put(file, catalog);
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * Converts a card id to an array of features (see Util.cardToFeatures).
+     *
+     * @param card     - the card id.
+     * @param features - the array to fill with the features.
+     */
+    public void cardToFeatures(int card, int[] features) {
+        int offset = card * featureCount;
+        for (int i = 0; i < featureCount; ++i)
+            features[i] = this.features.get(offset + i);
+    }
+
+    /**
+     * @return - true iff the catalog contains the completion table (only for a feature size of 3).
+     */
+    public boolean hasCompletions() {
+        return completions != null;
+    }
+
+    /**
+     * @param first  - a card id.
+     * @param second - a card id.
+     * @return - the card completing the two cards to a legal set.
+     * @PRE: hasCompletions()
+     */
+    public int complete(int first, int second) {
+        return completions.get(first * deckSize + second);
+    }
+
+    private static boolean hasCompletions(int featureSize, int deckSize) {
+        return featureSize == 3 && (long) deckSize * deckSize <= MAX_COMPLETIONS;
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static long fileSize(int featureSize, int featureCount) {
+        long deckSize = (long) Math.pow(featureSize, featureCount);
+        long size = HEADER_BYTES + deckSize * featureCount;
+        if (hasCompletions(featureSize, (int) deckSize)) size += deckSize * deckSize * Integer.BYTES;
+        return size;
+    }
+
+    private static boolean isValid(Path file, int featureSize, int featureCount) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) != fileSize(featureSize, featureCount)) return false;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining())
+                if (channel.read(header) < 0) return false;
+            header.flip();
+            return header.getInt() == MAGIC && header.getInt() == VERSION
+                    && header.getInt() == featureSize && header.getInt() == featureCount;
+        }
+    }
+
+    /**
+     * Writes the catalog to a temporary file and moves it into place, so that readers never see a partial file (the
+     * temporary file is deleted if the catalog cannot be built).
+     */
+    private static void build(Path file, int featureSize, int featureCount) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        boolean moved = false;
+        try {
+            write(temp, featureSize, featureCount);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        } finally {
+            if (!moved) Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void write(Path temp, int featureSize, int featureCount) throws IOException {
+        int deckSize = (int) Math.pow(featureSize, featureCount);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(featureSize).putInt(featureCount);
+
+            int[][] features = new int[deckSize][featureCount];
+            for (int card = 0; card < deckSize; card++) {
+                for (int i = featureCount - 1, id = card; i >= 0; --i, id /= featureSize)
+                    features[card][i] = id % featureSize;
+                for (int i = 0; i < featureCount; i++) {
+                    if (!buffer.hasRemaining()) flush(channel, buffer);
+                    buffer.put((byte) features[card][i]);
+                }
+            }
+
+            if (hasCompletions(featureSize, deckSize))
+                for (int first = 0; first < deckSize; first++)
+                    for (int second = 0; second < deckSize; second++) {
+                        // each feature of the third card is the one making the sum of the three divisible by 3
+                        int third = 0;
+                        for (int i = 0; i < featureCount; i++)
+                            third = third * 3 + (6 - features[first][i] - features[second][i]) % 3;
+                        if (buffer.remaining() < Integer.BYTES) flush(channel, buffer);
+                        buffer.putInt(third);
+                    }
+            flush(channel, buffer);
+            channel.force(true);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
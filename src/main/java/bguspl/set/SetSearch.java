@@ -0,0 +1,176 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * A fork/join task enumerating all the legal sets in a collection of cards whose first card is in a range of
+ * positions. The range is split in halves until every task enumerates the sets starting with a single card.
+ * Found sets are either collected into a primitive buffer per task (merged in order) or streamed to an action.
+ */
+class SetSearch extends RecursiveTask<SetSearch.Buffer> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of candidate sets checked at once (see Util.testSets).
+     */
+    private static final int BATCH = 256;
+
+    /**
+     * The data shared by all the tasks of a search.
+     */
+    private static class Search {
+        final Util util;
+        final SetCatalog catalog;
+        final int setSize;
+        final int[] cards;
+        final int[] position;
+        final Consumer<int[]> action;
+
+        Search(Util util, SetCatalog catalog, Config config, List<Integer> deck, Consumer<int[]> action) {
+            this.util = util;
+            this.catalog = catalog;
+            this.setSize = config.featureSize;
+            this.action = action;
+            cards = new int[deck.size()];
+            position = new int[config.deckSize];
+            Arrays.fill(position, -1);
+            for (int i = 0; i < cards.length; ++i) {
+                cards[i] = deck.get(i);
+                position[cards[i]] = i;
+            }
+        }
+    }
+
+    /**
+     * A growable array of sets (setSize consecutive card ids per set).
+     */
+    static class Buffer {
+        private final int setSize;
+        private int[] data;
+        private int size;
+
+        Buffer(int setSize) {
+            this.setSize = setSize;
+            data = new int[setSize * 16];
+        }
+
+        void add(int[] set) {
+            if (size + setSize > data.length) data = Arrays.copyOf(data, data.length * 2);
+            System.arraycopy(set, 0, data, size, setSize);
+            size += setSize;
+        }
+
+        void addAll(Buffer other) {
+            if (size + other.size > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, size + other.size));
+            System.arraycopy(other.data, 0, data, size, other.size);
+            size += other.size;
+        }
+
+        List<int[]> toList() {
+            List<int[]> sets = new ArrayList<>(size / setSize);
+            for (int i = 0; i < size; i += setSize)
+                sets.add(Arrays.copyOfRange(data, i, i + setSize));
+            return sets;
+        }
+    }
+
+    private final Search search;
+    private final int from;
+    private final int to;
+
+    /**
+     * Creates a task searching all the sets in the deck.
+     *
+     * @param util    - the utilities used to test the sets.
+     * @param catalog - the card catalog (null if not used).
+     * @param config  - the game configuration.
+     * @param deck    - the cards to search.
+     * @param action  - the action to pass each set found to (null to collect the sets into the result).
+     */
+    SetSearch(Util util, SetCatalog catalog, Config config, List<Integer> deck, Consumer<int[]> action) {
+        this(new Search(util, catalog, config, deck, action), 0, deck.size());
+    }
+
+    private SetSearch(Search search, int from, int to) {
+        this.search = search;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected Buffer compute() {
+        Buffer sets = search.action == null ? new Buffer(search.setSize) : null;
+        if (to - from <= 1) {
+            if (from < to) searchFrom(from, sets);
+            return sets;
+        }
+        int middle = (from + to) >>> 1;
+        SetSearch left = new SetSearch(search, from, middle);
+        SetSearch right = new SetSearch(search, middle, to);
+        invokeAll(left, right);
+        if (sets != null) {
+            sets.addAll(left.join());
+            sets.addAll(right.join());
+        }
+        return sets;
+    }
+
+    /**
+     * Enumerates the sets whose first card is at the given position (the rest of the cards are after it).
+     */
+    private void searchFrom(int first, Buffer sets) {
+        int[] cards = search.cards;
+        int n = cards.length;
+        int r = search.setSize;
+        if (r < 2 || n - first < r) return;
+
+        if (search.catalog != null && search.catalog.hasCompletions()) {
+            for (int j = first + 1; j < n; ++j) {
+                int third = search.catalog.complete(cards[first], cards[j]);
+                if (search.position[third] > j) emit(new int[]{cards[first], cards[j], third}, sets);
+            }
+            return;
+        }
+
+        // combination[0] is fixed, the rest are generated in lexicographic order and checked in batches
+        int[] combination = new int[r];
+        for (int i = 0; i < r; ++i) combination[i] = first + i;
+        int[] batch = new int[r * BATCH];
+        boolean[] valid = new boolean[BATCH];
+        int count = 0;
+        while (combination[r - 1] < n) {
+            for (int i = 0; i < r; ++i) batch[count * r + i] = cards[combination[i]];
+            if (++count == BATCH) {
+                check(batch, count, valid, sets);
+                count = 0;
+            }
+
+            int t = r - 1;
+            while (t != 1 && combination[t] == n - r + t) --t;
+            combination[t]++;
+            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+        }
+        check(batch, count, valid, sets);
+    }
+
+    /**
+     * Checks a batch of candidates and emits the legal sets among them.
+     */
+    private void check(int[] batch, int count, boolean[] valid, Buffer sets) {
+        int r = search.setSize;
+        search.util.testSets(batch, count, valid);
+        for (int i = 0; i < count; ++i)
+            if (valid[i]) emit(Arrays.copyOfRange(batch, i * r, i * r + r), sets);
+    }
+
+    private void emit(int[] set, Buffer sets) {
+        Arrays.sort(set);
+        if (sets != null) sets.add(set);
+        else search.action.accept(set);
+    }
+}
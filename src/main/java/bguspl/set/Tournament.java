@@ -0,0 +1,569 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.GameState;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Simulation;
+import bguspl.set.ex.Table;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Handler;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * This class runs a tournament: many headless games between computer players, played in parallel on a work-stealing
+ * pool in a single JVM. Every game seats a few entries of the roster; the results of each game are appended to a CSV
+ * file as soon as it ends, and an Elo-style rating table of the roster is updated incrementally.
+ *
+ * The tournament settings file holds the tournament keys below together with any game settings (e.g.
+ * TurnTimeoutSeconds), which are passed on to every game. The players of the games are always computer players.
+ * A tournament may play only a range of the games (a shard of a campaign, see Coordinator); it can then also write
+ * its results in game order to a binary results file and report its progress on the standard output.
+ */
+public class Tournament {
+
+    /**
+     * The multiplier spreading the seeds of consecutive games.
+     */
+    private static final long SEED_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * An entry of the roster - a named computer player.
+     */
+    private static class Entry {
+        final String name;
+        final String strategy;
+        final String pressDelaySeconds;
+
+        Entry(String name, String strategy, String pressDelaySeconds) {
+            this.name = name;
+            this.strategy = strategy;
+            this.pressDelaySeconds = pressDelaySeconds;
+        }
+    }
+
+    /**
+     * The aggregated results and the rating of a roster entry.
+     */
+    private static class Standing {
+        final Entry entry;
+        double rating;
+        int games;
+        int wins;
+        long score;
+        long penalties;
+
+        Standing(Entry entry, double rating) {
+            this.entry = entry;
+            this.rating = rating;
+        }
+    }
+
+    private final Logger logger;
+
+    /**
+     * The game settings passed on to every game.
+     */
+    private final Properties settings;
+
+    /**
+     * The roster of the tournament.
+     */
+    private final List<Entry> roster;
+
+    /**
+     * The number of the first game to play and the number of games to play.
+     */
+    private final int firstGame;
+    private final int games;
+
+    /**
+     * The number of players seated in each game.
+     */
+    private final int playersPerGame;
+
+    /**
+     * The number of games played at the same time.
+     */
+    private final int threads;
+
+    /**
+     * The number of milliseconds after which a game is stopped (0 for no limit) - in game time, if simulated.
+     */
+    private final long gameTimeLimitMillis;
+
+    /**
+     * True iff the games are played on the game core with a simulated clock (see Simulation), instead of by the
+     * dealer and player threads in real time.
+     */
+    private final boolean simulated;
+
+    /**
+     * The seed of the first game (the seed of every game is derived from it).
+     */
+    private final long seed;
+
+    /**
+     * The Elo K-factor (the maximal rating change of a single game).
+     */
+    private final double eloK;
+
+    /**
+     * The number of games between rewrites of the ratings file.
+     */
+    private final int reportEvery;
+
+    /**
+     * The results file (a line per player per game), the binary results file (by game order) and the ratings file
+     * (each null if not written).
+     */
+    private final Path resultsFile;
+    private final Path binaryResultsFile;
+    private final Path ratingsFile;
+
+    /**
+     * The directory of the leaderboard the games are recorded in (null if none), and the number of results its log
+     * keeps when it is compacted.
+     */
+    private final Path leaderboardDirectory;
+    private final long leaderboardRetainGames;
+
+    /**
+     * True iff the progress should be reported on the standard output (for a coordinator).
+     */
+    private final boolean reportProgress;
+
+    /**
+     * The card catalog shared by all the games (null if not used).
+     */
+    private final SetCatalog catalog;
+
+    /**
+     * The standings of the roster entries, by name (guarded by this).
+     */
+    private final Map<String, Standing> standings;
+
+    /**
+     * The number of games recorded and failed so far, and the number of errors writing their results (guarded by
+     * this).
+     */
+    private int recorded;
+    private int failed;
+    private int writeErrors;
+
+    /**
+     * The writers of the results files (guarded by this, null if not written).
+     */
+    private BufferedWriter results;
+    private DataOutputStream binaryResults;
+    private Leaderboard leaderboard;
+
+    /**
+     * The results that ended before a previous game, by game (a failed game has no result), and the next game to
+     * write to the binary results file (guarded by this).
+     */
+    private final TreeMap<Integer, GameResult> outOfOrder = new TreeMap<>();
+    private int nextInOrder;
+
+    public Tournament(Logger logger, Properties settings) {
+        this.logger = logger;
+        this.settings = settings;
+
+        roster = new ArrayList<>();
+        for (String item : settings.getProperty("Roster", "Random:random, Oracle:oracle").split(",")) {
+            String[] parts = item.trim().split(":");
+            roster.add(new Entry(parts[0].trim(), parts.length > 1 ? parts[1].trim() : "random",
+                    parts.length > 2 ? parts[2].trim() : settings.getProperty("ComputerPressDelaySeconds", "1")));
+        }
+        firstGame = Integer.parseInt(settings.getProperty("FirstGame", "0"));
+        games = Integer.parseInt(settings.getProperty("Games", "100"));
+        playersPerGame = Integer.parseInt(settings.getProperty("PlayersPerGame", "2"));
+        threads = Integer.parseInt(settings.getProperty("Threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        gameTimeLimitMillis = (long) (Double.parseDouble(settings.getProperty("GameTimeLimitSeconds", "0")) * 1000.0);
+        String engine = settings.getProperty("Engine", "threads").trim();
+        simulated = engine.equalsIgnoreCase("simulation");
+        if (!simulated && !engine.equalsIgnoreCase("threads"))
+            logger.severe("warning: unknown engine " + engine + " using threads.");
+        seed = Long.parseLong(settings.getProperty("Seed", String.valueOf(System.nanoTime())));
+        eloK = Double.parseDouble(settings.getProperty("EloK", "32"));
+        reportEvery = Integer.parseInt(settings.getProperty("ReportEvery", "100"));
+        resultsFile = path(settings.getProperty("Results", "results/tournament.csv"));
+        binaryResultsFile = path(settings.getProperty("BinaryResults", ""));
+        ratingsFile = path(settings.getProperty("Ratings", "results/ratings.csv"));
+        leaderboardDirectory = path(settings.getProperty("Leaderboard", ""));
+        leaderboardRetainGames = Long.parseLong(settings.getProperty("LeaderboardRetainGames", "10000"));
+        reportProgress = Boolean.parseBoolean(settings.getProperty("ReportProgress", "False"));
+        nextInOrder = firstGame;
+
+        if (playersPerGame < 1 || playersPerGame > roster.size())
+            throw new IllegalArgumentException("cannot seat " + playersPerGame + " players from a roster of " + roster.size());
+        if (threads < 1) throw new IllegalArgumentException("invalid number of threads: " + threads);
+
+        double initialRating = Double.parseDouble(settings.getProperty("EloInitial", "1500"));
+        standings = new LinkedHashMap<>();
+        for (Entry entry : roster)
+            if (standings.put(entry.name, new Standing(entry, initialRating)) != null)
+                throw new IllegalArgumentException("duplicate roster name: " + entry.name);
+
+        catalog = loadCatalog(settings.getProperty("SetCatalogDirectory", "").trim(),
+                Integer.parseInt(settings.getProperty("FeatureSize", "3")),
+                Integer.parseInt(settings.getProperty("FeatureCount", "4")));
+    }
+
+    /**
+     * The tournament's main function.
+     *
+     * The process exits with a non-zero code if the tournament failed (or a game of it).
+     *
+     * @param args - the name of the tournament settings file (tournament.properties if not given).
+     */
+    public static void main(String[] args) {
+        Logger logger = Main.initLogger();
+        String filename = args.length > 0 ? args[0] : "tournament.properties";
+        boolean failed = true;
+        try {
+            new Tournament(logger, Config.loadProperties(filename, logger)).run();
+            failed = false;
+        } catch (IllegalArgumentException | IOException e) {
+            logger.severe("the tournament failed: " + e.getMessage());
+            System.out.println("The tournament failed: " + e.getMessage());
+        } catch (InterruptedException ignored) {
+        } finally {
+            for (Handler h : logger.getHandlers()) h.flush();
+        }
+        if (failed) System.exit(1);
+    }
+
+    /**
+     * Plays all the games of the tournament and writes the results and the final ratings.
+     * @throws IOException - if the results cannot be written, or if a game failed (the results of the others are
+     *                       written first).
+     */
+    public void run() throws IOException, InterruptedException {
+        logger.severe("tournament of games " + firstGame + "-" + (firstGame + games - 1) + " on " + threads + " threads, seed " + seed);
+        long start = System.currentTimeMillis();
+        open();
+        try {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            for (int i = firstGame; i < firstGame + games; i++) {
+                final int game = i;
+                pool.execute(() -> {
+                    try {
+                        record(play(game));
+                    } catch (RuntimeException | InterruptedException e) {
+                        fail(game, e);
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            close();
+        }
+
+        String summary = String.format("tournament ended: %d games in %.1f seconds (%d failed)",
+                recorded, (System.currentTimeMillis() - start) / 1000.0, failed);
+        logger.severe(summary);
+        System.out.println(summary);
+        if (ratingsFile != null) for (String line : ratingTable()) System.out.println(line);
+        synchronized (this) {
+            if (failed > 0 || writeErrors > 0)
+                throw new IOException(failed + " games failed and " + writeErrors + " results were not written");
+        }
+    }
+
+    /**
+     * Opens the results files.
+     */
+    synchronized void open() throws IOException {
+        if (resultsFile != null) {
+            createParent(resultsFile);
+            results = Files.newBufferedWriter(resultsFile, StandardCharsets.UTF_8);
+            results.write("game,seed,durationMillis,timedOut,player,name,strategy,score,penalties,winner");
+            results.newLine();
+        }
+        if (binaryResultsFile != null) {
+            createParent(binaryResultsFile);
+            binaryResults = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(binaryResultsFile)));
+        }
+        if (leaderboardDirectory != null) leaderboard = new Leaderboard(leaderboardDirectory, leaderboardRetainGames);
+    }
+
+    /**
+     * Closes the results files and writes the final ratings. The binary results file gets its end mark only if all
+     * the games were played and written - a coordinator takes a file without it for a failed shard.
+     */
+    synchronized void close() throws IOException {
+        try {
+            if (results != null) results.close();
+            if (binaryResults != null) {
+                if (failed == 0 && writeErrors == 0) GameResult.writeEnd(binaryResults);
+                binaryResults.close();
+            }
+            if (leaderboard != null) leaderboard.close();
+        } finally {
+            results = null;
+            binaryResults = null;
+            leaderboard = null;
+        }
+        if (ratingsFile != null) writeRatings();
+    }
+
+    /**
+     * Plays a single game until it ends (or until the time limit).
+     * @param game - the number of the game.
+     * @return - the result of the game.
+     */
+    GameResult play(int game) throws InterruptedException {
+        long gameSeed = seed + game * SEED_GAMMA;
+        Entry[] seats = seat(new SplittableRandom(gameSeed));
+
+        Properties properties = new Properties();
+        properties.putAll(settings);
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", String.valueOf(seats.length));
+        properties.setProperty("PlayerNames", join(seats, entry -> entry.name));
+        properties.setProperty("ComputerStrategies", join(seats, entry -> entry.strategy));
+        properties.setProperty("ComputerPressDelaySeconds", join(seats, entry -> entry.pressDelaySeconds));
+        properties.setProperty("Hints", "False");
+        properties.setProperty("EndGamePauseSeconds", "0");
+        properties.setProperty("CheckpointSeconds", "0");
+        properties.setProperty("LogLevel", "OFF");
+        properties.setProperty("Seed", String.valueOf(gameSeed));
+
+        Logger gameLogger = Logger.getAnonymousLogger();
+        gameLogger.setUseParentHandlers(false);
+        Config config = new Config(gameLogger, properties);
+        Env env = new Env(gameLogger, config, new UserInterfaceHeadless(), new UtilImpl(config, catalog));
+
+        String[] names = Arrays.stream(seats).map(entry -> entry.name).toArray(String[]::new);
+        if (simulated) {
+            GameState state = Simulation.play(env, gameSeed, gameTimeLimitMillis);
+            int[] scores = IntStream.range(0, seats.length).map(state::score).toArray();
+            int[] penalties = IntStream.range(0, seats.length).map(state::penalties).toArray();
+            int[] claims = IntStream.range(0, seats.length).map(state::claims).toArray();
+            // the claims are checked at once - they do not wait for a dealer
+            return new GameResult(game, gameSeed, state.clock(), !state.isOver(), names, scores, penalties, claims,
+                    new long[seats.length]);
+        }
+
+        Table table = new Table(env);
+        Player[] players = new Player[config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        long start = System.currentTimeMillis();
+        Thread dealerThread = new Thread(dealer, "dealer-" + game);
+        dealerThread.start();
+        dealerThread.join(gameTimeLimitMillis);
+        boolean timedOut = dealerThread.isAlive();
+        if (timedOut) {
+            dealer.terminate();
+            dealerThread.join();
+        }
+
+        int[] scores = IntStream.range(0, players.length).map(dealer::score).toArray();
+        int[] penalties = IntStream.range(0, players.length).map(dealer::penalties).toArray();
+        int[] claims = IntStream.range(0, players.length).map(dealer::claims).toArray();
+        long[] claimMicros = IntStream.range(0, players.length).mapToLong(dealer::claimLatencyMicros).toArray();
+        return new GameResult(game, gameSeed, System.currentTimeMillis() - start, timedOut, names, scores, penalties,
+                claims, claimMicros);
+    }
+
+    /**
+     * Picks the roster entries seated in a game (distinct entries in a random order).
+     */
+    private Entry[] seat(SplittableRandom random) {
+        Entry[] entries = roster.toArray(new Entry[0]);
+        for (int i = 0; i < playersPerGame; i++) {
+            int j = i + random.nextInt(entries.length - i);
+            Entry entry = entries[i];
+            entries[i] = entries[j];
+            entries[j] = entry;
+        }
+        return Arrays.copyOf(entries, playersPerGame);
+    }
+
+    private static String join(Entry[] seats, Function<Entry, String> field) {
+        return String.join(",", Arrays.stream(seats).map(field).toArray(String[]::new));
+    }
+
+    /**
+     * Appends the result of a game to the results files and updates the standings.
+     * @param result - the result of the game (its players must be in the roster).
+     */
+    synchronized void record(GameResult result) {
+        try {
+            if (results != null) {
+                for (int player = 0; player < result.names.length; player++) {
+                    results.write(result.game + "," + result.seed + "," + result.durationMillis + "," + result.timedOut + ","
+                            + player + "," + result.names[player] + "," + standings.get(result.names[player]).entry.strategy + ","
+                            + result.scores[player] + "," + result.penalties[player] + "," + result.isWinner(player));
+                    results.newLine();
+                }
+                results.flush();
+            }
+            if (binaryResults != null) writeInOrder(result.game, result);
+            if (leaderboard != null) leaderboard.record(result);
+        } catch (IOException e) {
+            writeErrors++;
+            logger.severe("error writing the result of game " + result.game + ": " + e.getMessage());
+        }
+
+        rate(result);
+        recorded++;
+        progress();
+    }
+
+    /**
+     * Counts a game that failed (it has no result).
+     * @param game - the number of the game.
+     * @param e    - the reason it failed.
+     */
+    synchronized void fail(int game, Exception e) {
+        failed++;
+        logger.severe("game " + game + " failed: " + e);
+        try {
+            if (binaryResults != null) writeInOrder(game, null);
+        } catch (IOException ex) {
+            writeErrors++;
+            logger.severe("error writing the results after game " + game + ": " + ex.getMessage());
+        }
+        progress();
+    }
+
+    /**
+     * Writes the results of all the games that ended up to the first game that did not end yet to the binary
+     * results file, so the file is always sorted by game.
+     * @param game   - the game that ended.
+     * @param result - its result (null if it failed).
+     * @PRE: Thread.holdsLock(this)
+     */
+    private void writeInOrder(int game, GameResult result) throws IOException {
+        outOfOrder.put(game, result);
+        while (!outOfOrder.isEmpty() && outOfOrder.firstKey() == nextInOrder) {
+            GameResult next = outOfOrder.pollFirstEntry().getValue();
+            if (next != null) next.writeTo(binaryResults);
+            nextInOrder++;
+        }
+        binaryResults.flush();
+    }
+
+    /**
+     * Reports the progress of the tournament.
+     * @PRE: Thread.holdsLock(this)
+     */
+    private void progress() {
+        int done = recorded + failed;
+        if (reportProgress) {
+            System.out.println(Coordinator.PROGRESS + done + " " + games);
+            System.out.flush();
+        }
+        if (reportEvery > 0 && done % reportEvery == 0) {
+            logger.severe("tournament progress: " + done + "/" + games + " games");
+            if (ratingsFile != null) writeRatings();
+        }
+    }
+
+    /**
+     * Updates the standings and the ratings of the players of a game. Every pair of players is rated as a match
+     * won by the higher score, and the rating change of a player is averaged over his opponents.
+     * @PRE: Thread.holdsLock(this)
+     */
+    private void rate(GameResult result) {
+        int n = result.names.length;
+        Standing[] seated = new Standing[n];
+        for (int i = 0; i < n; i++) {
+            seated[i] = standings.get(result.names[i]);
+            seated[i].games++;
+            if (result.isWinner(i)) seated[i].wins++;
+            seated[i].score += result.scores[i];
+            seated[i].penalties += result.penalties[i];
+        }
+        if (n < 2) return;
+
+        double[] change = new double[n];
+        for (int i = 0; i < n; i++)
+            for (int j = i + 1; j < n; j++) {
+                double expected = 1.0 / (1.0 + Math.pow(10, (seated[j].rating - seated[i].rating) / 400.0));
+                double actual = result.scores[i] > result.scores[j] ? 1 : result.scores[i] == result.scores[j] ? 0.5 : 0;
+                change[i] += eloK * (actual - expected);
+                change[j] -= eloK * (actual - expected);
+            }
+        for (int i = 0; i < n; i++)
+            seated[i].rating += change[i] / (n - 1);
+    }
+
+    /**
+     * @return - the lines of the rating table (CSV, by descending rating).
+     */
+    private synchronized List<String> ratingTable() {
+        List<Standing> sorted = new ArrayList<>(standings.values());
+        sorted.sort((a, b) -> Double.compare(b.rating, a.rating));
+        List<String> lines = new ArrayList<>();
+        lines.add("rank,name,strategy,rating,games,wins,winRate,averageScore,averagePenalties");
+        for (int i = 0; i < sorted.size(); i++) {
+            Standing standing = sorted.get(i);
+            double games = Math.max(1, standing.games);
+            lines.add(String.format("%d,%s,%s,%.1f,%d,%d,%.3f,%.2f,%.2f", i + 1, standing.entry.name,
+                    standing.entry.strategy, standing.rating, standing.games, standing.wins, standing.wins / games,
+                    standing.score / games, standing.penalties / games));
+        }
+        return lines;
+    }
+
+    /**
+     * Replaces the ratings file with the current rating table (readers never see a partly written file).
+     */
+    private void writeRatings() {
+        try {
+            createParent(ratingsFile);
+            Path temp = Files.createTempFile(ratingsFile.toAbsolutePath().getParent(), "ratings", ".tmp");
+            Files.write(temp, ratingTable(), StandardCharsets.UTF_8);
+            Files.move(temp, ratingsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.severe("error writing the ratings: " + e.getMessage());
+        }
+    }
+
+    private static Path path(String name) {
+        return name.trim().isEmpty() ? null : Paths.get(name.trim());
+    }
+
+    private static void createParent(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+    }
+
+    private SetCatalog loadCatalog(String directory, int featureSize, int featureCount) {
+        if (directory.isEmpty()) return null;
+        try {
+            return SetCatalog.load(Paths.get(directory), featureSize, featureCount);
+        } catch (IOException | InvalidPathException e) {
+            logger.severe("error loading the card catalog: " + e.getMessage());
+            return null;
+        }
+    }
+}
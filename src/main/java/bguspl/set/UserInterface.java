@@ -84,4 +84,11 @@ public interface UserInterface {
      * Programmatically closes the window.
      */
     void dispose();
+
+    /**
+     * @return - true iff the interface draws on the console (then nothing else may print to System.out).
+     */
+    default boolean drawsOnConsole() {
+        return false;
+    }
 }
@@ -101,4 +101,9 @@ public class UserInterfaceDecorator implements UserInterface {
         logger.severe("disposing of user interface elements");
         if (ui != null) ui.dispose();
     }
+
+    @Override
+    public boolean drawsOnConsole() {
+        return ui != null && ui.drawsOnConsole();
+    }
 }
@@ -63,7 +63,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-        addKeyListener(new InputManager(logger, config, players));
+        addKeyListener(new InputManager(config, players));
         addWindowListener(new WindowManager());
 
         EventQueue.invokeLater(() -> setVisible(true));
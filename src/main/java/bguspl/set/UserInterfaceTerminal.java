@@ -0,0 +1,339 @@
+package bguspl.set;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * A user interface that draws the game on a text terminal with ANSI escape sequences (for hosts without a display,
+ * e.g. watching a game over ssh).
+ * The calls only update an in-memory model of the screen and mark what changed; a render thread redraws the changed
+ * cells, at most terminalFrameRate times a second, so a burst of calls (e.g. a countdown update and several tokens)
+ * is drawn as a single frame. All the output goes through one buffered writer and is flushed once per frame.
+ */
+public class UserInterfaceTerminal implements UserInterface, Runnable {
+
+    private static final String ESC = "\u001b[";
+    private static final String RESET = ESC + "0m";
+    private static final String[] COLORS = {ESC + "31m", ESC + "32m", ESC + "35m", ESC + "34m", ESC + "33m", ESC + "36m"};
+    private static final String WARN = ESC + "1;31m";
+
+    /**
+     * The width of a card cell and the height of a card row (card line, tokens line, blank line).
+     */
+    private static final int CELL_WIDTH = 14;
+    private static final int ROW_HEIGHT = 3;
+
+    private final Logger logger;
+    private final Config config;
+    private final Util util;
+    private final Writer out;
+
+    /**
+     * The minimal number of milliseconds between frames.
+     */
+    private final long frameMillis;
+
+    /*
+     * The model of the screen (guarded by this)
+     */
+    private final int[] cards;
+    private final boolean[][] tokens;
+    private final int[] scores;
+    private final long[] freezes;
+    private long timerMillis;
+    private boolean timerWarn;
+    private boolean elapsed;
+    private int[] winners;
+
+    /*
+     * What changed since the last frame (guarded by this)
+     */
+    private final boolean[] dirtySlots;
+    private final boolean[] dirtyPlayers;
+    private boolean dirtyTimer;
+    private boolean dirtyWinners;
+    private boolean dirty;
+
+    /*
+     * The number of calls and the number of frames drawn (for the log)
+     */
+    private long updates;
+    private long frames;
+
+    /**
+     * The render thread.
+     */
+    private final Thread renderer;
+
+    /**
+     * Shows the cursor again if the game is killed before the interface is disposed of.
+     */
+    private final Thread restoreCursor;
+
+    /**
+     * True iff the interface was disposed of.
+     */
+    private volatile boolean disposed;
+
+    public UserInterfaceTerminal(Logger logger, Config config, Util util, OutputStream out) {
+        this.logger = logger;
+        this.config = config;
+        this.util = util;
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 14);
+        this.frameMillis = Math.max(1, 1000 / Math.max(1, config.terminalFrameRate));
+        cards = new int[config.tableSize];
+        Arrays.fill(cards, -1);
+        tokens = new boolean[config.players][config.tableSize];
+        scores = new int[config.players];
+        freezes = new long[config.players];
+        dirtySlots = new boolean[config.tableSize];
+        dirtyPlayers = new boolean[config.players];
+        Arrays.fill(dirtySlots, true);
+        Arrays.fill(dirtyPlayers, true);
+        dirtyTimer = true;
+        dirty = true;
+
+        restoreCursor = new Thread(() -> write(RESET + ESC + "?25h" + System.lineSeparator()), "terminal-ui-restore");
+        Runtime.getRuntime().addShutdownHook(restoreCursor);
+        renderer = new Thread(this, "terminal-ui");
+        renderer.setDaemon(true);
+        renderer.start();
+    }
+
+    /**
+     * The render thread starts here (draws a frame whenever the model changed, at the frame rate at most).
+     */
+    @Override
+    public void run() {
+        write(ESC + "2J" + ESC + "?25l");
+        StringBuilder frame = new StringBuilder(4096);
+        long lastFrame = 0;
+        while (!disposed) {
+            synchronized (this) {
+                while (!dirty && !disposed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ignored) {}
+                }
+            }
+            // let the rest of the burst arrive - it is drawn with this frame
+            long wait = lastFrame + frameMillis - System.currentTimeMillis();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException ignored) {}
+            }
+            frame.setLength(0);
+            synchronized (this) {
+                render(frame);
+            }
+            write(frame);
+            lastFrame = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Draws the changed parts of the model and clears the marks.
+     * @PRE: Thread.holdsLock(this)
+     */
+    private void render(StringBuilder frame) {
+        for (int slot = 0; slot < dirtySlots.length; slot++) {
+            if (!dirtySlots[slot]) continue;
+            dirtySlots[slot] = false;
+            int row = 1 + (slot / config.columns) * ROW_HEIGHT;
+            int column = 1 + (slot % config.columns) * CELL_WIDTH;
+            moveTo(frame, row, column);
+            pad(frame, describeCard(cards[slot]), cards[slot] < 0 ? "" : color(cards[slot]));
+            moveTo(frame, row + 1, column);
+            StringBuilder marks = new StringBuilder();
+            for (int player = 0; player < tokens.length; player++)
+                if (tokens[player][slot]) marks.append(player + 1).append(' ');
+            pad(frame, marks.toString(), "");
+        }
+
+        int line = 1 + config.rows * ROW_HEIGHT;
+        if (dirtyTimer) {
+            dirtyTimer = false;
+            moveTo(frame, line, 1);
+            String timer = (elapsed ? "Elapsed: " : "Remaining: ") + formatTime(timerMillis, timerWarn && !elapsed);
+            frame.append(timerWarn && !elapsed ? WARN : "").append(timer).append(RESET).append(ESC).append('K');
+        }
+        for (int player = 0; player < dirtyPlayers.length; player++) {
+            if (!dirtyPlayers[player]) continue;
+            dirtyPlayers[player] = false;
+            moveTo(frame, line + 2 + player, 1);
+            frame.append(config.playerNames[player]).append(": ").append(scores[player]);
+            if (freezes[player] > 0) frame.append(WARN).append("  frozen ").append(formatTime(freezes[player], false)).append(RESET);
+            frame.append(ESC).append('K');
+        }
+        if (dirtyWinners) {
+            dirtyWinners = false;
+            moveTo(frame, line + 3 + scores.length, 1);
+            StringBuilder names = new StringBuilder();
+            for (int player : winners) names.append(names.length() == 0 ? "" : ", ").append(config.playerNames[player]);
+            frame.append(winners.length == 1 ? "THE WINNER IS: " : "IT IS A DRAW: ").append(names).append(ESC).append('K');
+        }
+        moveTo(frame, line + 4 + scores.length, 1);
+        dirty = false;
+        frames++;
+    }
+
+    private static void moveTo(StringBuilder frame, int row, int column) {
+        frame.append(ESC).append(row).append(';').append(column).append('H');
+    }
+
+    private static void pad(StringBuilder frame, String text, String color) {
+        frame.append(color).append(text).append(color.isEmpty() ? "" : RESET);
+        for (int i = text.length(); i < CELL_WIDTH; i++) frame.append(' ');
+    }
+
+    private String describeCard(int card) {
+        if (card < 0) return "";
+        StringBuilder sb = new StringBuilder("[");
+        for (int feature : util.cardToFeatures(card)) sb.append(feature);
+        return sb.append(']').toString();
+    }
+
+    private String color(int card) {
+        return COLORS[util.cardToFeatures(card)[0] % COLORS.length];
+    }
+
+    private static String formatTime(long millis, boolean fraction) {
+        long seconds = millis / 1000;
+        String time = String.format("%d:%02d", seconds / 60, seconds % 60);
+        return fraction ? time + "." + (millis % 1000) / 100 : time;
+    }
+
+    private void write(CharSequence text) {
+        try {
+            out.append(text);
+            out.flush();
+        } catch (IOException e) {
+            logger.severe("error writing to the terminal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Marks the model as changed and wakes the render thread.
+     * @PRE: Thread.holdsLock(this)
+     */
+    private void changed() {
+        updates++;
+        if (!dirty) {
+            dirty = true;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void placeCard(int card, int slot) {
+        cards[slot] = card;
+        dirtySlots[slot] = true;
+        changed();
+    }
+
+    @Override
+    public synchronized void removeCard(int slot) {
+        cards[slot] = -1;
+        dirtySlots[slot] = true;
+        changed();
+    }
+
+    @Override
+    public synchronized void placeToken(int player, int slot) {
+        tokens[player][slot] = true;
+        dirtySlots[slot] = true;
+        changed();
+    }
+
+    @Override
+    public synchronized void removeTokens() {
+        for (boolean[] playerTokens : tokens) Arrays.fill(playerTokens, false);
+        Arrays.fill(dirtySlots, true);
+        changed();
+    }
+
+    @Override
+    public synchronized void removeTokens(int slot) {
+        for (boolean[] playerTokens : tokens) playerTokens[slot] = false;
+        dirtySlots[slot] = true;
+        changed();
+    }
+
+    @Override
+    public synchronized void removeToken(int player, int slot) {
+        tokens[player][slot] = false;
+        dirtySlots[slot] = true;
+        changed();
+    }
+
+    @Override
+    public synchronized void setCountdown(long millies, boolean warn) {
+        timerMillis = millies;
+        timerWarn = warn;
+        elapsed = false;
+        dirtyTimer = true;
+        changed();
+    }
+
+    @Override
+    public synchronized void setElapsed(long millies) {
+        timerMillis = millies;
+        elapsed = true;
+        dirtyTimer = true;
+        changed();
+    }
+
+    @Override
+    public synchronized void setFreeze(int player, long millies) {
+        freezes[player] = millies;
+        dirtyPlayers[player] = true;
+        changed();
+    }
+
+    @Override
+    public synchronized void setScore(int player, int score) {
+        scores[player] = score;
+        dirtyPlayers[player] = true;
+        changed();
+    }
+
+    @Override
+    public synchronized void announceWinner(int[] players) {
+        winners = players.clone();
+        dirtyWinners = true;
+        changed();
+    }
+
+    @Override
+    public boolean drawsOnConsole() {
+        return true;
+    }
+
+    @Override
+    public void dispose() {
+        StringBuilder frame = new StringBuilder();
+        synchronized (this) {
+            disposed = true;
+            notifyAll();
+            // the last changes are drawn here, after the render thread stops
+            render(frame);
+        }
+        try {
+            renderer.join(1000);
+        } catch (InterruptedException ignored) {}
+        write(frame.append(ESC).append("?25h").append(System.lineSeparator()));
+        try {
+            Runtime.getRuntime().removeShutdownHook(restoreCursor);
+        } catch (IllegalStateException ignored) {
+            // already shutting down - the hook runs too, showing the cursor twice is harmless
+        }
+        logger.info("terminal ui drew " + frames + " frames for " + updates + " updates");
+    }
+}
@@ -1,6 +1,7 @@
 package bguspl.set;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * An interface for general utilities provided for convenience.
@@ -31,6 +32,15 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Checks a batch of candidate sets at once (much faster than calling testSet for each one).
+     *
+     * @param cards - the card ids of the candidates, one candidate after the other (config.featureSize ids each).
+     * @param count - the number of candidates.
+     * @param valid - the results: valid[i] is set to true iff candidate i forms a legal set.
+     */
+    void testSets(int[] cards, int count, boolean[] valid);
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
@@ -40,6 +50,23 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Finds and returns all the sets in the given collection of cards. Large collections are searched in parallel.
+     *
+     * @param deck - a collection of cards (may not include null objects).
+     * @return - a list of integer arrays, each one contains the card ids of a legal set.
+     */
+    List<int[]> findAllSets(List<Integer> deck);
+
+    /**
+     * Finds all the sets in the given collection of cards and passes each one to the action as it is found, without
+     * keeping them. Large collections are searched in parallel, so the action may be called from several threads.
+     *
+     * @param deck   - a collection of cards (may not include null objects).
+     * @param action - the action to perform on each set (an integer array with the card ids of a legal set).
+     */
+    void forEachSet(List<Integer> deck, Consumer<int[]> action);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
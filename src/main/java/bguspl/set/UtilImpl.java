@@ -3,7 +3,9 @@ package bguspl.set;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
 
 /**
@@ -11,13 +13,70 @@ import java.util.stream.IntStream;
  */
 public class UtilImpl implements Util {
 
+    /**
+     * The smallest collection of cards searched in parallel for all its sets.
+     */
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    /**
+     * The number of candidates testSets checks at a time (so their columns stay in the L1 cache).
+     */
+    private static final int BATCH = 512;
+
+    /**
+     * The largest deck whose feature words are kept.
+     */
+    private static final int MAX_FEATURE_WORDS = 1 << 20;
+
     private final Config config;
 
+    /**
+     * The precomputed catalog of the cards (null if not used).
+     */
+    private final SetCatalog catalog;
+
+    /**
+     * The features of every card packed to a word for testSets: featureSize bits per feature, of which only the bit
+     * of the value of the feature is on (null if the features of a card do not fit a long).
+     */
+    private final long[] featureWords;
+
+    /**
+     * The lowest bit of every feature in a word, and the bits of a single feature.
+     */
+    private final long lowBits;
+    private final long featureBits;
+
     public UtilImpl(Config config) {
+        this(config, null);
+    }
+
+    public UtilImpl(Config config, SetCatalog catalog) {
         this.config = config;
+        this.catalog = catalog;
+
+        long low = 0;
+        for (int i = 0; i < config.featureCount; ++i) low |= 1L << (i * config.featureSize);
+        lowBits = low;
+        featureBits = (1L << config.featureSize) - 1;
+        if (config.featureSize >= 2 && config.featureSize * config.featureCount <= Long.SIZE
+                && config.deckSize <= MAX_FEATURE_WORDS) {
+            featureWords = new long[config.deckSize];
+            int[] features = new int[config.featureCount];
+            for (int card = 0; card < featureWords.length; ++card) {
+                cardToFeatures(card, features);
+                long word = 0;
+                for (int i = 0; i < features.length; ++i) word |= 1L << (i * config.featureSize + features[i]);
+                featureWords[card] = word;
+            }
+        } else featureWords = null;
     }
 
     private void cardToFeatures(int card, int[] features) {
+        if (catalog != null) {
+            catalog.cardToFeatures(card, features);
+            return;
+        }
         for (int i = config.featureCount - 1; i >= 0; --i) {
             features[i] = card % config.featureSize;
             card /= config.featureSize;
@@ -40,6 +99,8 @@ public class UtilImpl implements Util {
 
     @Override
     public boolean testSet(int[] cards) {
+        if (catalog != null && catalog.hasCompletions() && cards.length == 3)
+            return catalog.complete(cards[0], cards[1]) == cards[2];
         int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
         for (int i = 0; i < config.featureCount; ++i) {
             boolean sameSame = true, butDifferent = true;
@@ -64,8 +125,48 @@ public class UtilImpl implements Util {
         return true;
     }
 
+    /**
+     * The candidates are checked in blocks, a column at a time: the words of the cards in each position of the
+     * candidates are OR-ed to the features any of their cards has and AND-ed to the features all of them have.
+     * A feature is the same in all the cards iff these agree on it, and different in all of them iff any of the
+     * cards has every value of it (a set has featureSize cards). So a candidate is legal iff each feature of the
+     * difference of the two words is either empty or full - checked for all the features at once. The loops over
+     * a block are branch free, so the JIT may vectorize them.
+     */
+    @Override
+    public void testSets(int[] cards, int count, boolean[] valid) {
+        int size = config.featureSize;
+        if (featureWords == null) {
+            int[] candidate = new int[size];
+            for (int i = 0; i < count; ++i) {
+                System.arraycopy(cards, i * size, candidate, 0, size);
+                valid[i] = testSet(candidate);
+            }
+            return;
+        }
+
+        long[] any = new long[Math.min(count, BATCH)];
+        long[] all = new long[any.length];
+        for (int start = 0; start < count; start += BATCH) {
+            int n = Math.min(BATCH, count - start);
+            Arrays.fill(any, 0, n, 0L);
+            Arrays.fill(all, 0, n, -1L);
+            for (int j = 0; j < size; ++j)
+                for (int i = 0, card = start * size + j; i < n; ++i, card += size) {
+                    long word = featureWords[cards[card]];
+                    any[i] |= word;
+                    all[i] &= word;
+                }
+            for (int i = 0; i < n; ++i) {
+                long difference = any[i] ^ all[i];
+                valid[start + i] = difference == (difference & lowBits) * featureBits;
+            }
+        }
+    }
+
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
+        if (catalog != null && catalog.hasCompletions()) return findSetsByCompletion(deck, count);
         LinkedList<int[]> sets = new LinkedList<>();
         int n = deck.size();
         int r = config.featureSize;
@@ -90,6 +191,46 @@ public class UtilImpl implements Util {
         return sets;
     }
 
+    /**
+     * Finds sets by looking up the card completing each pair of cards in the catalog (in the same order as the
+     * combinations are enumerated in findSets).
+     */
+    private List<int[]> findSetsByCompletion(List<Integer> deck, int count) {
+        LinkedList<int[]> sets = new LinkedList<>();
+        int n = deck.size();
+        int[] cards = new int[n];
+        int[] position = new int[config.deckSize];
+        Arrays.fill(position, -1);
+        for (int i = 0; i < n; ++i) {
+            cards[i] = deck.get(i);
+            position[cards[i]] = i;
+        }
+
+        for (int i = 0; i < n; ++i)
+            for (int j = i + 1; j < n; ++j) {
+                int third = catalog.complete(cards[i], cards[j]);
+                if (position[third] > j) {
+                    int[] set = {cards[i], cards[j], third};
+                    Arrays.sort(set);
+                    sets.add(set);
+                    if (sets.size() >= count) return sets;
+                }
+            }
+        return sets;
+    }
+
+    @Override
+    public List<int[]> findAllSets(List<Integer> deck) {
+        if (deck.size() < PARALLEL_THRESHOLD) return findSets(deck, Integer.MAX_VALUE);
+        return ForkJoinPool.commonPool().invoke(new SetSearch(this, catalog, config, deck, null)).toList();
+    }
+
+    @Override
+    public void forEachSet(List<Integer> deck, Consumer<int[]> action) {
+        if (deck.size() < PARALLEL_THRESHOLD) findSets(deck, Integer.MAX_VALUE).forEach(action);
+        else ForkJoinPool.commonPool().invoke(new SetSearch(this, catalog, config, deck, action));
+    }
+
     public void spin() {
         if (config.randomSpinMax <= 0) return;
         long cycles = ThreadLocalRandom.current().nextLong(config.randomSpinMin, config.randomSpinMax);
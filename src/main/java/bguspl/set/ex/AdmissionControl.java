@@ -0,0 +1,125 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class protects the dealer from players that press too fast (abusive, or buggy computer players). The key
+ * presses of every player pass a token bucket of his own, and the presses that complete a claim also pass a bucket
+ * shared by all the players - a ceiling on the rate of the claims the dealer checks. Input over a limit is shed by
+ * the admission policy: dropped, or deferred (the player thread waits for a token, up to maxDeferMillis - input that
+ * would wait longer is dropped). The buckets are kept the way of the generic cell rate algorithm: a bucket is the
+ * time its next token is due at, so taking a token is a single compare-and-set and never blocks other players.
+ * The dropped and deferred input is counted in the game metrics.
+ */
+public class AdmissionControl {
+
+    /**
+     * What is done with input over a limit.
+     */
+    public enum Shedding {
+        /** The input is dropped. */
+        DROP,
+        /** The player waits for the input to be admitted (input that would wait too long is dropped). */
+        DEFER
+    }
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    private final Shedding shedding;
+
+    /**
+     * The time between two tokens of a bucket (0 for no limit), and the time a bucket can run ahead of it (for a
+     * burst of tokens) - in nanoseconds.
+     */
+    private final long pressInterval;
+    private final long pressTolerance;
+    private final long claimInterval;
+    private final long claimTolerance;
+
+    /**
+     * The longest time input is deferred for (in nanoseconds).
+     */
+    private final long maxDeferNanos;
+
+    /**
+     * The time (System.nanoTime) the next token of each player's bucket is due at, and of the claims bucket.
+     */
+    private final AtomicLong[] pressDue;
+    private final AtomicLong claimDue;
+
+    public AdmissionControl(Env env) {
+        this.env = env;
+        this.shedding = Config.parsePolicy(env.logger, Shedding.class, env.config.admissionPolicy, Shedding.DEFER);
+        this.pressInterval = interval(env.config.inputRate);
+        this.pressTolerance = pressInterval * Math.max(0, env.config.inputBurst - 1);
+        this.claimInterval = interval(env.config.claimRate);
+        this.claimTolerance = claimInterval * Math.max(0, env.config.claimBurst - 1);
+        this.maxDeferNanos = shedding == Shedding.DEFER ? env.config.admissionMaxDeferMillis * 1_000_000 : 0;
+        long now = System.nanoTime();
+        this.pressDue = new AtomicLong[env.config.players];
+        for (int i = 0; i < pressDue.length; i++) pressDue[i] = new AtomicLong(now);
+        this.claimDue = new AtomicLong(now);
+    }
+
+    private static long interval(double rate) {
+        return rate > 0 ? (long) (1_000_000_000 / rate) : 0;
+    }
+
+    /**
+     * Admits a key press of a player. Called by the player thread (which may wait here, if input is deferred).
+     * @param player - the id of the player.
+     * @return - true iff the press is admitted.
+     */
+    public boolean admitPress(int player) {
+        return admit(pressDue[player], pressInterval, pressTolerance, "admission.pressesDropped",
+                "admission.pressesDeferred");
+    }
+
+    /**
+     * Admits a key press that completes a claim (after admitPress). Called by the player thread (which may wait
+     * here, if input is deferred).
+     * @return - true iff the claim is admitted.
+     */
+    public boolean admitClaim() {
+        return admit(claimDue, claimInterval, claimTolerance, "admission.claimsDropped", "admission.claimsDeferred");
+    }
+
+    private boolean admit(AtomicLong due, long interval, long tolerance, String dropped, String deferred) {
+        if (interval == 0) return true;
+        long wait = take(due, interval, tolerance);
+        if (wait < 0) {
+            env.metrics.increment(dropped);
+            return false;
+        }
+        if (wait > 0) {
+            env.metrics.increment(deferred);
+            env.metrics.add("admission.deferredMillis", wait / 1_000_000);
+            long deadline = System.nanoTime() + wait;
+            // an interrupt (the game is terminated) ends the wait
+            for (long left = wait; left > 0 && !Thread.currentThread().isInterrupted(); left = deadline - System.nanoTime())
+                LockSupport.parkNanos(this, left);
+        }
+        return true;
+    }
+
+    /**
+     * Takes the next token of a bucket, if it is due within maxDeferNanos.
+     * @return - the time to wait until the token is due (0 if it is due now), or -1 if it was not taken.
+     */
+    private long take(AtomicLong due, long interval, long tolerance) {
+        while (true) {
+            long now = System.nanoTime();
+            long next = due.get();
+            long wait = Math.max(0, next - tolerance - now);
+            if (wait > maxDeferNanos) return -1;
+            if (due.compareAndSet(next, (next - now > 0 ? next : now) + interval)) return wait;
+        }
+    }
+}
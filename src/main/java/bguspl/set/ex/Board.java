@@ -0,0 +1,50 @@
+package bguspl.set.ex;
+
+import java.util.List;
+
+/**
+ * A read-only view of the board (the cards and the tokens on the table): an immutable copy published by the table
+ * (BoardSnapshot), or the live board of a game state (GameState) - read without copying.
+ */
+public interface Board {
+
+    /**
+     * @return - the number of changes to the cards on the board (the cards are the same while it is the same).
+     */
+    long cardsVersion();
+
+    /**
+     * @return - the number of slots on the board.
+     */
+    int tableSize();
+
+    /**
+     * @param slot - the slot.
+     * @return - the card in the slot, or -1 if there is none.
+     */
+    int card(int slot);
+
+    /**
+     * @param card - the card id.
+     * @return - the slot the card is in, or -1 if it is not on the board.
+     */
+    int slotOf(int card);
+
+    /**
+     * @return - the cards on the board (by slot order).
+     */
+    List<Integer> cards();
+
+    /**
+     * @param player - the player id.
+     * @param slot   - the slot.
+     * @return - true iff the player has a token on the slot.
+     */
+    boolean hasToken(int player, int slot);
+
+    /**
+     * @param player - the player id.
+     * @return - the number of tokens the player has on the board.
+     */
+    int tokenCount(int player);
+}
@@ -0,0 +1,160 @@
+package bguspl.set.ex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable copy of the board (cards and tokens) published by the table on every change.
+ * Any number of threads can read a snapshot without locking; a reader that wants the latest state reads the table's
+ * current snapshot again.
+ */
+public final class BoardSnapshot implements Board {
+
+    /**
+     * The number of changes to the board (cards or tokens) until this snapshot.
+     */
+    public final long version;
+
+    /**
+     * The number of changes to the cards on the board until this snapshot (see Table.version).
+     */
+    public final long cardsVersion;
+
+    /**
+     * The card in each slot (-1 if none).
+     */
+    private final int[] slots;
+
+    /**
+     * The tokens of each player - a bit per slot, words consecutive longs per player.
+     */
+    private final long[] tokens;
+
+    /**
+     * The number of longs in the token mask of a player.
+     */
+    private final int words;
+
+    BoardSnapshot(long version, long cardsVersion, int[] slots, long[] tokens, int words) {
+        this.version = version;
+        this.cardsVersion = cardsVersion;
+        this.slots = slots;
+        this.tokens = tokens;
+        this.words = words;
+    }
+
+    /**
+     * @return - an empty board.
+     */
+    static BoardSnapshot empty(int tableSize, int players) {
+        int words = (tableSize + 63) >>> 6;
+        int[] slots = new int[tableSize];
+        Arrays.fill(slots, -1);
+        return new BoardSnapshot(0, 0, slots, new long[players * words], words);
+    }
+
+    /**
+     * @return - a copy of this snapshot with a card placed in (or removed from, if card == -1) a slot.
+     * The tokens on the slot are removed.
+     */
+    BoardSnapshot withCard(long cardsVersion, int slot, int card) {
+        int[] slots = this.slots.clone();
+        slots[slot] = card;
+        long[] tokens = this.tokens;
+        long bit = 1L << slot;
+        for (int i = slot >>> 6; i < tokens.length; i += words)
+            if ((tokens[i] & bit) != 0) {
+                if (tokens == this.tokens) tokens = tokens.clone();
+                tokens[i] &= ~bit;
+            }
+        return new BoardSnapshot(version + 1, cardsVersion, slots, tokens, words);
+    }
+
+    /**
+     * @return - a copy of this snapshot with a player's token placed on (or removed from) a slot.
+     */
+    BoardSnapshot withToken(int player, int slot, boolean placed) {
+        long[] tokens = this.tokens.clone();
+        int i = player * words + (slot >>> 6);
+        if (placed) tokens[i] |= 1L << slot;
+        else tokens[i] &= ~(1L << slot);
+        return new BoardSnapshot(version + 1, cardsVersion, slots, tokens, words);
+    }
+
+    @Override
+    public long cardsVersion() {
+        return cardsVersion;
+    }
+
+    /**
+     * @return - the number of slots on the board.
+     */
+    @Override
+    public int tableSize() {
+        return slots.length;
+    }
+
+    /**
+     * @param slot - the slot.
+     * @return - the card in the slot, or -1 if there is none.
+     */
+    @Override
+    public int card(int slot) {
+        return slots[slot];
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - the slot the card is in, or -1 if it is not on the board.
+     */
+    @Override
+    public int slotOf(int card) {
+        for (int slot = 0; slot < slots.length; slot++)
+            if (slots[slot] == card) return slot;
+        return -1;
+    }
+
+    /**
+     * @return - the cards on the board (by slot order).
+     */
+    @Override
+    public List<Integer> cards() {
+        List<Integer> cards = new ArrayList<>(slots.length);
+        for (int card : slots)
+            if (card >= 0) cards.add(card);
+        return cards;
+    }
+
+    /**
+     * @return - the number of cards on the board.
+     */
+    public int countCards() {
+        int count = 0;
+        for (int card : slots)
+            if (card >= 0) count++;
+        return count;
+    }
+
+    /**
+     * @param player - the player id.
+     * @param slot   - the slot.
+     * @return - true iff the player has a token on the slot.
+     */
+    @Override
+    public boolean hasToken(int player, int slot) {
+        return (tokens[player * words + (slot >>> 6)] & (1L << slot)) != 0;
+    }
+
+    /**
+     * @param player - the player id.
+     * @return - the number of tokens the player has on the board.
+     */
+    @Override
+    public int tokenCount(int player) {
+        int count = 0;
+        for (int i = player * words; i < (player + 1) * words; i++)
+            count += Long.bitCount(tokens[i]);
+        return count;
+    }
+}
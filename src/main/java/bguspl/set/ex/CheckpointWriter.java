@@ -0,0 +1,140 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * This class writes the checkpoints of a game on its own thread, so capturing a checkpoint never waits for the disk.
+ * Only the latest checkpoint offered is written (a checkpoint replaced before it was written is skipped), each one
+ * to the other file of the pair, and forced to the disk before the next one overwrites the older file.
+ */
+public class CheckpointWriter implements Runnable {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The base name of the checkpoint files.
+     */
+    private final Path base;
+
+    /**
+     * The latest checkpoint offered and not written yet (null if none).
+     */
+    private final AtomicReference<GameCheckpoint> pending = new AtomicReference<>();
+
+    /**
+     * The buffer the checkpoints are encoded into (used only by the writer thread).
+     */
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * The writer thread.
+     */
+    private volatile Thread thread;
+
+    /**
+     * True iff the writer should be terminated.
+     */
+    private volatile boolean terminate;
+
+    public CheckpointWriter(Env env) {
+        this.env = env;
+        this.base = Paths.get(env.config.checkpointFile);
+    }
+
+    /**
+     * The writer thread starts here (writes the checkpoints as they are offered).
+     */
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        while (!terminate) {
+            GameCheckpoint checkpoint = pending.getAndSet(null);
+            if (checkpoint == null) LockSupport.park(this);
+            else write(checkpoint);
+        }
+        // the last checkpoint offered is written before the thread ends
+        GameCheckpoint checkpoint = pending.getAndSet(null);
+        if (checkpoint != null) write(checkpoint);
+        env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * Offers a checkpoint to be written. Never blocks.
+     * @param checkpoint - the checkpoint.
+     */
+    public void offer(GameCheckpoint checkpoint) {
+        if (pending.getAndSet(checkpoint) != null) env.metrics.increment("checkpoint.skipped");
+        Thread writer = thread;
+        if (writer != null) LockSupport.unpark(writer);
+    }
+
+    /**
+     * Writes a checkpoint over the older of the two files.
+     */
+    private void write(GameCheckpoint checkpoint) {
+        long start = System.nanoTime();
+        int size = checkpoint.encodedSize();
+        if (buffer.capacity() < size) buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(size) << 1);
+        buffer.clear();
+        checkpoint.encode(buffer, crc);
+        buffer.flip();
+
+        Path path = GameCheckpoint.file(base, (int) (checkpoint.sequence & 1));
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) channel.write(buffer, buffer.position());
+                channel.truncate(size);
+                channel.force(false);
+            }
+            env.metrics.increment("checkpoint.writes");
+            env.metrics.set("checkpoint.writeMicros", (System.nanoTime() - start) / 1000);
+        } catch (IOException e) {
+            env.metrics.increment("checkpoint.errors");
+            env.logger.severe("error writing checkpoint " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the checkpoint files (when the game ended, so it is not restored).
+     */
+    public void discard() {
+        for (int which = 0; which < 2; which++)
+            try {
+                Files.deleteIfExists(GameCheckpoint.file(base, which));
+            } catch (IOException e) {
+                env.logger.severe("error deleting checkpoint: " + e.getMessage());
+            }
+    }
+
+    /**
+     * Called when the writer should be terminated (after it writes the last checkpoint offered).
+     */
+    public void terminate() {
+        terminate = true;
+        Thread writer = thread;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+            } catch (InterruptedException ignored) {}
+        }
+    }
+}
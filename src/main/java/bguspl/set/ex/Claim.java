@@ -0,0 +1,44 @@
+package bguspl.set.ex;
+
+/**
+ * This class holds a player's request for the dealer to check the set he marked with his tokens.
+ *
+ * @inv slots.length == generations.length
+ */
+class Claim {
+
+    /**
+     * The id of the player who made the claim.
+     */
+    final int player;
+
+    /**
+     * The slots on which the player's tokens were placed when the claim was made.
+     */
+    final int[] slots;
+
+    /**
+     * The generation of each slot (respectively) when the claim was made.
+     */
+    final int[] generations;
+
+    /**
+     * The time (System.nanoTime) the claim was made at - the earliest claim wins a conflict.
+     */
+    final long time;
+
+    /**
+     * The class constructor.
+     *
+     * @param player      - the id of the player who made the claim.
+     * @param slots       - the slots of the player's tokens.
+     * @param generations - the generation of each slot when the claim was made.
+     * @param time        - the time the claim was made at.
+     */
+    Claim(int player, int[] slots, int[] generations, long time) {
+        this.player = player;
+        this.slots = slots;
+        this.generations = generations;
+        this.time = time;
+    }
+}
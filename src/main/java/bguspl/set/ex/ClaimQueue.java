@@ -0,0 +1,165 @@
+package bguspl.set.ex;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The claims waiting for the dealer: a bounded ring of claims with many producers (the player threads, in
+ * Table.placeToken) and a single consumer (the dealer thread). Every position of the ring has a sequence number: a
+ * producer takes a ticket with a single atomic increment, writes its claim to the position of the ticket and
+ * publishes it by advancing the sequence of the position; the consumer takes the published claims in ticket order
+ * and frees their positions for the tickets one lap ahead. The ring holds two claims per player, and a player makes
+ * no claim until the dealer answered his previous one, so a ticket always finds its position free and submitting a
+ * claim is wait free. Cancelling all the waiting claims (when the table is reshuffled) is done by the consumer: it
+ * marks the tickets taken so far as cancelled and frees the positions of the claims published; a cancelled claim
+ * published later is skipped and its position freed as soon as the consumer reaches it. The dealer parks while the ring is empty and the producer of a claim
+ * unparks him only if he is parked.
+ *
+ * @inv head <= tail.get()
+ */
+class ClaimQueue {
+
+    /**
+     * The longs between the sequence numbers of two positions (a cache line each, so producers of neighbouring
+     * positions do not share a line).
+     */
+    private static final int PAD = 8;
+
+    /**
+     * An atomic long on a cache line of its own.
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedLong extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    /**
+     * The claim in each position of the ring, and the sequence number of each position (every PAD-th long): equal to
+     * the ticket it is free for, or to the ticket plus 1 when the claim of the ticket is published.
+     */
+    private final AtomicReferenceArray<Claim> claims;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    /**
+     * The next ticket to give to a producer.
+     */
+    private final PaddedLong tail = new PaddedLong();
+
+    /**
+     * The next ticket to take (used only by the consumer).
+     */
+    private long head;
+
+    /**
+     * The tickets below this one are cancelled.
+     */
+    private volatile long cancelledBefore;
+
+    /**
+     * The consumer while he is parked (null otherwise).
+     */
+    private volatile Thread waiter;
+
+    /**
+     * @param producers - the number of producers (each one has at most one claim waiting).
+     */
+    ClaimQueue(int producers) {
+        int capacity = Integer.highestOneBit(Math.max(2, 2 * producers - 1)) << 1;
+        claims = new AtomicReferenceArray<>(capacity);
+        sequences = new AtomicLongArray(capacity * PAD);
+        for (int i = 0; i < capacity; i++) sequences.set(i * PAD, i);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Submits a claim and unparks the consumer if he is waiting. Called by the producers.
+     * @param claim - the claim.
+     */
+    void add(Claim claim) {
+        long ticket = tail.getAndIncrement();
+        int index = (int) ticket & mask;
+        // the position is free unless a player has more than one claim waiting
+        while (sequences.get(index * PAD) != ticket) Thread.yield();
+        claims.set(index, claim);
+        sequences.set(index * PAD, ticket + 1);
+
+        Thread thread = waiter;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    /**
+     * Moves the published claims that were not cancelled to the list, in the order they were submitted.
+     * Called by the consumer.
+     * @param batch - the list to add the claims to.
+     * @return - the number of claims added.
+     */
+    int drainTo(List<Claim> batch) {
+        int count = 0;
+        for (Claim claim; (claim = peek()) != null; count++) {
+            batch.add(claim);
+            take();
+        }
+        return count;
+    }
+
+    /**
+     * @return - the next claim to take, without taking it (null if none). The cancelled claims before it are taken.
+     * Called by the consumer.
+     */
+    Claim peek() {
+        long cancelled = cancelledBefore;
+        while (true) {
+            int index = (int) head & mask;
+            if (sequences.get(index * PAD) != head + 1) return null;
+            if (head >= cancelled) return claims.get(index);
+            take();
+        }
+    }
+
+    /**
+     * Takes the published claim at the head and frees its position for the ticket one lap ahead.
+     */
+    private void take() {
+        int index = (int) head & mask;
+        claims.lazySet(index, null);
+        sequences.set(index * PAD, head + mask + 1);
+        head++;
+    }
+
+    /**
+     * @return - true iff no claim is published. Called by the consumer.
+     */
+    boolean isEmpty() {
+        return peek() == null;
+    }
+
+    /**
+     * Cancels all the claims submitted so far and frees the positions of those published (the rest are freed when
+     * they are published and the consumer reaches them). Called by the consumer.
+     */
+    void clear() {
+        cancelledBefore = tail.get();
+        peek();
+    }
+
+    /**
+     * Parks the consumer until a claim is submitted, or up to the timeout, or until he is interrupted (the interrupt
+     * is cleared, as by Object.wait). Called by the consumer.
+     * @param timeout - the longest time to wait.
+     * @param unit    - the unit of the timeout.
+     */
+    void await(long timeout, TimeUnit unit) {
+        // the waiter is set before checking for claims, and a producer checks for a waiter after publishing his
+        // claim - so either the consumer sees the claim or the producer sees the waiter
+        waiter = Thread.currentThread();
+        if (isEmpty()) LockSupport.parkNanos(this, unit.toNanos(timeout));
+        waiter = null;
+        Thread.interrupted();
+    }
+}
@@ -0,0 +1,230 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * This class arranges the top of the dealer's deck so that the next deal contains legal sets.
+ * Instead of reshuffling until the dealt cards happen to contain a set, it seeds a set on the top of the deck and
+ * fills the rest of the deal with random cards. For a partial reshuffle it finds the card of the deck that completes
+ * cards of the table to a set, or seeds a whole set on the top of the deck.
+ */
+public class DealGenerator {
+
+    /**
+     * The number of random sets to try building before searching the deck for one.
+     */
+    private static final int SEED_ATTEMPTS = 16;
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The random generator used to build the seeded sets.
+     */
+    private final SplittableRandom random;
+
+    /**
+     * Buffers for the seeded set (reused between deals).
+     */
+    private final int[] anchorFeatures;
+    private final int[] values;
+    private final int[] set;
+
+    public DealGenerator(Env env, SplittableRandom random) {
+        this.env = env;
+        this.random = random;
+        anchorFeatures = new int[env.config.featureCount];
+        values = new int[env.config.featureSize];
+        set = new int[env.config.featureSize];
+    }
+
+    /**
+     * Arranges the top cards of the deck so that they contain config.dealMinimumSets disjoint legal sets (as many as
+     * fit in the deal and exist in the deck).
+     * @param deck  - the dealer's deck.
+     * @param count - the number of cards about to be dealt.
+     * @return - the number of sets seeded on the top of the deck.
+     * @POST: the top min(count, deck.size()) cards are in random order.
+     */
+    public int stack(Deck deck, int count) {
+        count = Math.min(count, deck.size());
+        deck.shuffle(count);
+        int sets = 0;
+        int wanted = Math.min(env.config.dealMinimumSets, count / env.config.featureSize);
+        while (sets < wanted && seedSet(deck, sets * env.config.featureSize)) sets++;
+        deck.permuteTop(count);
+        return sets;
+    }
+
+    /**
+     * Seeds a legal set on the top of the deck.
+     * @param deck - the dealer's deck.
+     * @return - true iff a set was found (its config.featureSize cards are on the top of the deck).
+     */
+    public boolean stackSet(Deck deck) {
+        return deck.size() >= env.config.featureSize && seedSet(deck, 0);
+    }
+
+    /**
+     * Prepares a partial reshuffle: stacks the cards for a legal set on the top of the deck - a single card, if a card
+     * of the deck completes config.featureSize - 1 cards of the table to a set, or else a whole set - and picks the
+     * cards of the table they replace: the ones with the fewest tokens (the first among equals), not of the set.
+     * @param cards  - the cards on the table.
+     * @param tokens - the number of tokens on each of the cards (respectively).
+     * @param deck   - the dealer's deck.
+     * @return - the positions (in cards) of the cards to replace by the top cards of the deck (in order), or null if
+     * the deck has no cards for a set.
+     */
+    public int[] stackReplacement(int[] cards, int[] tokens, Deck deck) {
+        boolean[] kept = new boolean[cards.length];
+        int count;
+        int[] group = stackCompletion(cards, deck);
+        if (group != null) {
+            for (int i : group) kept[i] = true;
+            count = 1;
+        } else if (cards.length >= env.config.featureSize && stackSet(deck)) count = env.config.featureSize;
+        else return null;
+
+        int[] replaced = new int[count];
+        for (int j = 0; j < count; j++) {
+            int best = -1;
+            for (int i = 0; i < cards.length; i++)
+                if (!kept[i] && (best < 0 || tokens[i] < tokens[best])) best = i;
+            kept[best] = true;
+            replaced[j] = best;
+        }
+        return replaced;
+    }
+
+    /**
+     * Finds config.featureSize - 1 cards of the table that a card of the deck completes to a legal set, and moves that
+     * card to the top of the deck. The groups of cards are tried from a random one.
+     * @param board - the cards on the table.
+     * @param deck  - the dealer's deck.
+     * @return - the positions (in board) of the cards the top card of the deck completes, or null if there are none.
+     */
+    public int[] stackCompletion(int[] board, Deck deck) {
+        int size = env.config.featureSize;
+        int r = size - 1;
+        // a single card does not determine its completion
+        if (r < 2 || board.length < r || deck.isEmpty()) return null;
+        int[][] features = env.util.cardsToFeatures(board);
+        int n = board.length;
+        int shift = random.nextInt(n);
+        int[] group = new int[r];
+        for (int i = 0; i < r; i++) group[i] = i;
+        while (true) {
+            int completion = complete(features, group, shift);
+            if (completion >= 0 && deck.contains(completion)) {
+                deck.moveTo(completion, 0);
+                for (int i = 0; i < r; i++) group[i] = (group[i] + shift) % n;
+                return group;
+            }
+            // the next group in lexicographic order
+            int t = r - 1;
+            while (t >= 0 && group[t] == n - r + t) t--;
+            if (t < 0) return null;
+            group[t]++;
+            for (int i = t + 1; i < r; i++) group[i] = group[i - 1] + 1;
+        }
+    }
+
+    /**
+     * @return - the card that completes the group of cards (positions rotated by shift) to a legal set, or -1 if
+     * there is none: each feature must be the same in all the cards of the group or different in all of them.
+     */
+    private int complete(int[][] features, int[] group, int shift) {
+        int featureSize = env.config.featureSize, n = features.length;
+        int card = 0;
+        for (int i = 0; i < env.config.featureCount; i++) {
+            int first = features[(group[0] + shift) % n][i];
+            boolean same = true;
+            long seen = 0;
+            for (int index : group) {
+                int value = features[(index + shift) % n][i];
+                same &= value == first;
+                seen |= 1L << value;
+            }
+            int value;
+            if (same) value = first;
+            else if (Long.bitCount(seen) == group.length) value = Long.numberOfTrailingZeros(~seen);
+            else return -1;
+            card = card * featureSize + value;
+        }
+        return card;
+    }
+
+    /**
+     * Finds a legal set among the cards of the deck below the given position and moves it to that position.
+     * @param deck   - the dealer's deck.
+     * @param offset - the position to move the set to (the cards above it are already seeded).
+     * @return - true iff a set was found.
+     */
+    private boolean seedSet(Deck deck, int offset) {
+        for (int attempt = 0; attempt < SEED_ATTEMPTS; attempt++) {
+            int anchor = deck.get(offset + random.nextInt(deck.size() - offset));
+            buildSet(anchor);
+            if (isAvailable(deck, offset)) {
+                moveSet(deck, offset);
+                return true;
+            }
+        }
+        // Bounded fallback for a nearly exhausted deck
+        List<Integer> rest = deck.asList().subList(offset, deck.size());
+        List<int[]> found = env.util.findSets(rest, 1);
+        if (found.isEmpty()) return false;
+        System.arraycopy(found.get(0), 0, set, 0, set.length);
+        moveSet(deck, offset);
+        return true;
+    }
+
+    /**
+     * Builds a random legal set containing the anchor card: each feature is either the same in all the cards or
+     * different in all of them (at least one feature is different so that the cards are distinct).
+     * @param anchor - the card id the set is built around.
+     * @POST: set[0] == anchor
+     */
+    private void buildSet(int anchor) {
+        int featureCount = env.config.featureCount, featureSize = env.config.featureSize;
+        for (int i = featureCount - 1, card = anchor; i >= 0; --i, card /= featureSize)
+            anchorFeatures[i] = card % featureSize;
+
+        int different = random.nextInt(featureCount); // this feature must differ between the cards
+        Arrays.fill(set, 0);
+        for (int i = 0; i < featureCount; i++) {
+            boolean same = i != different && random.nextBoolean();
+            // the anchor's value first, then the other values in random order
+            for (int v = 0; v < featureSize; v++) values[v] = v;
+            values[anchorFeatures[i]] = 0;
+            values[0] = anchorFeatures[i];
+            for (int v = featureSize - 1; v > 1; v--) {
+                int j = 1 + random.nextInt(v);
+                int tmp = values[v];
+                values[v] = values[j];
+                values[j] = tmp;
+            }
+            for (int j = 0; j < featureSize; j++)
+                set[j] = set[j] * featureSize + (same ? anchorFeatures[i] : values[j]);
+        }
+    }
+
+    /**
+     * @return - true iff all the cards of the set buffer are in the deck below the given position.
+     */
+    private boolean isAvailable(Deck deck, int offset) {
+        for (int card : set)
+            if (deck.position(card) < offset) return false;
+        return true;
+    }
+
+    private void moveSet(Deck deck, int offset) {
+        for (int j = 0; j < set.length; j++)
+            deck.moveTo(set[j], offset + j);
+    }
+}
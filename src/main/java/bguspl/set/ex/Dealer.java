@@ -4,15 +4,15 @@ import bguspl.set.Env;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.Vector;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
- * This class manages the dealer's threads and data
+ * This class manages the dealer's threads and data.
+ * The rules of the game are the game state's (see GameState): the dealer drives it with the real time - he passes it
+ * the claims of the players and the time, and keeps the table, the display and the players in step with it.
  */
 public class Dealer implements Runnable {
 
@@ -28,51 +28,99 @@ public class Dealer implements Runnable {
     private final Player[] players;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * The rules of the game - the deck, the cards of the table, the scores, the freezes and the turn timer.
      */
-    private final List<Integer> deck;
+    private final GameState state;
 
     /**
      * True iff game should be terminated.
      */
     private volatile boolean terminate;
 
-    /**
-     * The time when the dealer needs to reshuffle the deck due to turn timeout.
+    /*
+     * The time the game clock of the state was last advanced at (used only by the dealer thread)
      */
-    private long reshuffleTime = Long.MAX_VALUE;
+    private long lastTick;
 
     /*
-     * Random field to determine the place order of cards
-    */
-    private final List<Integer> cardsOrder;
-    
+     * The number of reshuffles (and of the full ones among them) of the state the table went through (used only by
+     * the dealer thread)
+     */
+    private int reshuffles;
+    private int fullReshuffles;
+
+    /*
+     * Updates the freeze countdowns of the players
+     */
+    private final FreezeScheduler freezeScheduler;
+
+    /*
+     * Computes the hints in the background (null if hints are off)
+     */
+    private final HintService hintService;
+
+    /*
+     * Accounts the CPU time and allocations of the game threads, and the account of the dealer thread
+     */
+    private final ThreadAccounting accounting;
+    private ThreadAccounting.Account account;
+
+    /*
+     * Watches the heartbeat of the dealer loop and the waits of the players
+     */
+    private final DealerWatchdog watchdog;
+
+    /*
+     * Limits the rate of the key presses and the claims of the players
+     */
+    private final AdmissionControl admission;
+
+    /*
+     * Writes the checkpoints of the game (null if checkpoints are off), the sequence number of the last checkpoint
+     * and the time of the next one
+     */
+    private final CheckpointWriter checkpointWriter;
+    private long checkpointSequence;
+    private long nextCheckpoint;
+
+    /*
+     * The total time the claims of each player the dealer resolved waited for it, in nanoseconds (used only by the
+     * dealer thread - read by others after it ended)
+     */
+    private final long[] claimNanos;
+
     /*
      * flag to notifiay the playrs in addcardtotable after removingallcards 
      */
     boolean removeAllCardsFromTable;
 
     /*
-     * An array of the player threads
+     * The dealer thread
      */
-    Thread[] playersThreads;
+    private volatile Thread dealerThread;
 
     /*
-     * The start time for turnTimeoutMillis = 0
-    */
-    private long startTimer;
+     * An array of the player threads
+     */
+    Thread[] playersThreads;
 
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
-        Collections.shuffle(deck);
-        cardsOrder = IntStream.range(0, env.config.rows * env.config.columns).boxed().collect(Collectors.toList());
-        Collections.shuffle(cardsOrder);
+        // All the random streams are split from one master stream, in a fixed order (see GameState)
+        long seed = env.config.seeded ? env.config.seed : new SplittableRandom().nextLong();
+        env.logger.info("game seed " + seed);
+        state = new GameState(env, seed);
+        hintService = env.config.hints ? new HintService(env, table) : null;
+        freezeScheduler = new FreezeScheduler(env);
+        accounting = new ThreadAccounting(env);
+        watchdog = new DealerWatchdog(env);
+        admission = new AdmissionControl(env);
+        checkpointWriter = env.config.checkpointMillis > 0 ? new CheckpointWriter(env) : null;
+        claimNanos = new long[env.config.players];
         removeAllCardsFromTable = true;
         playersThreads = new Thread[env.config.players];
-        startTimer = 0;       
     }
 
     /**
@@ -83,6 +131,15 @@ public class Dealer implements Runnable {
     @Override
     public void run() {
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        dealerThread = Thread.currentThread();
+        account = accounting.register(ThreadAccounting.Phase.IDLE_POLLING);
+        if(accounting.enabled()) new Thread(accounting, "thread-accounting").start();
+        if(watchdog.enabled()) new Thread(watchdog, "watchdog").start();
+        if(checkpointWriter != null) {
+            new Thread(checkpointWriter, "checkpoint-writer").start();
+            nextCheckpoint = System.currentTimeMillis() + env.config.checkpointMillis;
+        }
+        new Thread(freezeScheduler, "freeze-timer").start();
         // Creates Thread for each player and call start()
         for(int i = 0; i < playersThreads.length; i++) {
             playersThreads[i] = new Thread(players[i]);            
@@ -92,53 +149,34 @@ public class Dealer implements Runnable {
                 Thread.sleep(10);
             } catch (InterruptedException ignored) {}
         }
-        // Game versions
-            // No timer Game
-        if(env.config.turnTimeoutMillis < 0) { 
-            while(!shouldFinish()) {
-                beforePlaceOnTable();
-                placeCardsOnTable();
-                timerLoopForNoTime();
-                removeAllCardsFromTable();
-                }
-            }
-            // No limited time
-        else if (env.config.turnTimeoutMillis == 0) {
-             while(!shouldFinish()) {
-                beforePlaceOnTable();
-                placeCardsOnTable();
-                timerLoopForZero();
-                removeAllCardsFromTable();
-             }
-        }
-            // Regular Game
-        else {
-            while (!shouldFinish()) {
-                placeCardsOnTable();
-                timerLoop();
-                updateTimerDisplay(false);
-                removeAllCardsFromTable();
-            }
+        if(hintService != null) new Thread(hintService, "hints").start();
+        // Same for all versions - the state keeps the timer of the version (countdown, elapsed time or none)
+        placeCardsOnTable();
+        updateTimerDisplay();
+        while(!shouldFinish()) {
+            sleepUntilWokenOrTimeout();
+            tick();
+            removeCardsFromTable();
+            placeCardsOnTable();
         }
-        // Same for all versions
+        boolean finished = !terminate;
         announceWinners();
         terminate();
+        // A game that ended by its rules is not resumed
+        if(finished && checkpointWriter != null) checkpointWriter.discard();
         env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");   
     }
-    // Regular Game:
+
     /**
-     * The inner loop of the dealer thread that runs as long as the countdown did not time out.
+     * Advances the game clock of the state by the time passed (the state reshuffles the table if the turn timed out
+     * meanwhile) and updates the timer display.
      */
-    private void timerLoop() {
-        // Update the timer before sleep
-        reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
-        updateTimerDisplay(false);
-        while (!terminate && System.currentTimeMillis() < reshuffleTime ) {
-            sleepUntilWokenOrTimeout();
-            updateTimerDisplay(false);
-            removeCardsFromTable();
-            placeCardsOnTable();
-        }
+    private void tick() {
+        long now = System.currentTimeMillis();
+        state.tokensFrom(table.snapshot());
+        state.tick(now - lastTick);
+        lastTick = now;
+        updateTimerDisplay();
     }
 
     /**
@@ -146,10 +184,15 @@ public class Dealer implements Runnable {
      */
     public synchronized void terminate() {
         terminate = true;
+        watchdog.terminate();
         removeAllCardsFromTable();
+        if(hintService != null) hintService.terminate();
         for(int i=env.config.players - 1; i>=0; i--){
             players[i].terminate();
         } 
+        freezeScheduler.terminate();
+        if(checkpointWriter != null) checkpointWriter.terminate();
+        accounting.terminate();
     }
 
     /**
@@ -158,61 +201,98 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        phase(ThreadAccounting.Phase.END_CHECK);
+        return terminate || state.isOver();
     }
 
     /**
      * Checks cards should be removed from the table and removes them.
+     * All the pending claims are resolved by the state as one batch (see GameState.resolve), and then all the cards
+     * the state replaced are removed from the table at once.
      * @PRE: none
      * @POST: Update the tokens & notify the players respectively 
      */
-    private synchronized void removeCardsFromTable() {
-        while(!table.waitingForDealer.isEmpty()){
-            int playerId = table.waitingForDealer.remove();
-            // Saves the slots on which the player put token
-            int[] playerTokens = vectorToArray(table.tokens.get(playerId)); 
-            // Saves the cards on which the player put token on
-            int[] playerCards = new int[env.config.featureSize];
-            // Inserting Cards to cards array 
-            for(int i=0; i<playerCards.length; i++) playerCards[i] = table.slotToCard[playerTokens[i]]; 
-
-                synchronized(table.tokens.get(playerId)){
-                    // Check if set and update player           
-                    boolean result = (env.util.testSet(playerCards)) ? true : false;
-                    players[playerId].setCheckSet(result);
-
-                    // Update board - true => remove card : false => remove tokens;            
-                    for(int token : playerTokens){
-                        if(result) table.removeCard(token);
-                        else table.removeToken(playerId, token);
-                    }                                 
-
-                    // Reset timer
-                    if(result) resetTime();
-                    
-                    // Notify the player
-                    table.tokens.get(playerId).notify();
-                }
-
-                    // Update waitingForDealer - if a card with your token was removed, you're no longer waiting for response
-                    for(int id : table.waitingForDealer) {
-                        if(table.tokens.get(id).size() < env.config.featureSize) {
-                            table.waitingForDealer.remove(id);
-                            synchronized(table.tokens.get(id)) {table.tokens.get(id).notify();}                        
-                        }
-                    }
+    synchronized void removeCardsFromTable() {
+        // The cards the state replaced by itself (a reshuffle) go first - the claims on them become stale
+        removeReplacedCards();
+        if(table.waitingForDealer.isEmpty()) return;
+        phase(ThreadAccounting.Phase.CLAIM_VERIFICATION);
+        List<Claim> batch = new ArrayList<>(env.config.players);
+        table.waitingForDealer.drainTo(batch);
+        batch.sort(Comparator.comparingLong(claim -> claim.time));
+
+        // Stale claims are not resolved
+        List<Claim> live = new ArrayList<>(batch.size());
+        for(Claim claim : batch) if(!table.isStale(claim)) live.add(claim);
+        int[] claimPlayers = new int[live.size()];
+        int[][] claimSlots = new int[live.size()][];
+        for(int i = 0; i < claimPlayers.length; i++) {
+            claimPlayers[i] = live.get(i).player;
+            claimSlots[i] = live.get(i).slots;
         }
+        state.tokensFrom(table.snapshot());
+        GameState.Verdict[] verdicts = state.resolve(claimPlayers, claimSlots);
+
+        // A dropped claim is no longer waiting for response
+        boolean scored = false;
+        for(int i = 0; i < verdicts.length; i++) {
+            if(verdicts[i] == GameState.Verdict.DROPPED) continue;
+            Claim claim = live.get(i);
+            scored |= verdicts[i] == GameState.Verdict.POINT;
+            players[claim.player].setCheckSet(verdicts[i] == GameState.Verdict.POINT, state.frozenUntil(claim.player) - state.clock());
+            claimNanos[claim.player] += System.nanoTime() - claim.time;
+        }
+
+        // Update board - one removal for all the sets, the tokens of the wrong sets are removed
+        removeReplacedCards();
+        for(int i = 0; i < verdicts.length; i++)
+            if(verdicts[i] == GameState.Verdict.PENALTY)
+                for(int slot : claimSlots[i]) table.removeToken(claimPlayers[i], slot);
+        if(scored) updateTimerDisplay();
+
+        // Notify the players
+        for(Claim claim : batch)
+            synchronized(table.tokens.get(claim.player)) {table.tokens.get(claim.player).notify();}
+    }
+
+    /**
+     * Removes the cards the state took off the table from the table: all the cards after a full reshuffle, or else
+     * the changed ones at once.
+     */
+    private void removeReplacedCards() {
+        if(state.reshuffles() != reshuffles) {
+            reshuffles = state.reshuffles();
+            env.metrics.set("reshuffle.full", state.fullReshuffles());
+            env.metrics.set("reshuffle.partial", state.reshuffles() - state.fullReshuffles());
+            env.metrics.set("reshuffle.cardsReplaced", state.cardsReplaced());
+            if(state.fullReshuffles() != fullReshuffles) {
+                fullReshuffles = state.fullReshuffles();
+                removeAllCardsFromTable();
+                return;
+            }
+        }
+        BoardSnapshot board = state.board();
+        int[] removed = new int[env.config.tableSize];
+        int count = 0;
+        for(int slot = 0; slot < removed.length; slot++) {
+            Integer card = table.slotToCard[slot];
+            if(card != null && card != board.card(slot)) removed[count++] = slot;
+        }
+        if(count > 0) table.removeCards(Arrays.copyOf(removed, count));
     }
 
     /**
      * Check if any cards can be removed from the deck and placed on the table.
      * 
      */
-    private synchronized void placeCardsOnTable() {
-        //for each slot checks if its null and if it is, adds a new card from the deck
-        for(int i =0; i<cardsOrder.size(); i++) {
-        if(table.slotToCard[cardsOrder.get(i)]==null && !deck.isEmpty()) table.placeCard(deck.remove(0),cardsOrder.get(i));
+    synchronized void placeCardsOnTable() {
+        phase(ThreadAccounting.Phase.DEALING);
+        //for each slot checks if its null and if it is, adds the card the state dealt to it
+        BoardSnapshot board = state.board();
+        for(int slot : state.dealingOrder()) {
+        if(table.slotToCard[slot]==null && board.card(slot) >= 0) table.placeCard(board.card(slot),slot);
         }
+        if(hintService != null) hintService.boardChanged();
         if(removeAllCardsFromTable){
             // Notify the players
             for(Player p : players) {
@@ -222,7 +302,60 @@ public class Dealer implements Runnable {
                 }      
             }   
             removeAllCardsFromTable = false;
+            // The time of the deal is not played
+            lastTick = System.currentTimeMillis();
+        }
+        if(checkpointWriter != null && System.currentTimeMillis() >= nextCheckpoint) checkpoint();
+    }
+
+    /**
+     * Captures a checkpoint of the game and hands it to the checkpoint writer. Only the deck and the scores are
+     * copied - the board is the table's immutable snapshot - so the dealer is not held up by the disk.
+     * @PRE: called by the dealer thread, after the cards were placed on the table.
+     */
+    private void checkpoint() {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        long timerMillis = 0;
+        if(env.config.turnTimeoutMillis > 0) timerMillis = Math.max(0, state.remainingMillis());
+        else if(env.config.turnTimeoutMillis == 0) timerMillis = state.elapsedMillis();
+        // The scores are the state's, so they match the board even before the players update their own
+        int[] scores = new int[env.config.players];
+        int[] penalties = new int[env.config.players];
+        for(int player = 0; player < scores.length; player++) {
+            scores[player] = state.score(player);
+            penalties[player] = state.penalties(player);
         }
+        checkpointWriter.offer(new GameCheckpoint(++checkpointSequence, table.snapshot(), state.deckCards(),
+                scores, penalties, timerMillis));
+        nextCheckpoint = now + env.config.checkpointMillis;
+        long nanos = System.nanoTime() - start;
+        if(nanos > env.metrics.get("checkpoint.maxCaptureNanos")) env.metrics.set("checkpoint.maxCaptureNanos", nanos);
+    }
+
+    /**
+     * Restores a saved game - the deck, the cards and tokens on the table, the scores and the timer.
+     * Called before the dealer thread starts.
+     * @param checkpoint - the checkpoint of the game.
+     * @return - true iff the checkpoint was restored (it matches the table and players of this game).
+     */
+    public boolean restore(GameCheckpoint checkpoint) {
+        if(checkpoint.board.tableSize() != env.config.tableSize || checkpoint.players() != env.config.players) {
+            env.logger.severe("warning: the checkpoint does not match the game settings, starting a new game.");
+            return false;
+        }
+        state.restore(checkpoint.deck, checkpoint.board, checkpoint.scores, checkpoint.penalties, checkpoint.timerMillis);
+        for(int slot = 0; slot < env.config.tableSize; slot++)
+            if(checkpoint.board.card(slot) >= 0) table.placeCard(checkpoint.board.card(slot), slot);
+        for(Player player : players) {
+            player.restore(checkpoint.scores[player.id], checkpoint.penalties[player.id]);
+            // A player who had a claim waiting re-submits it: placing his last token makes the claim again
+            for(int slot = 0; slot < env.config.tableSize; slot++)
+                if(checkpoint.board.hasToken(player.id, slot)) table.placeToken(player.id, slot);
+        }
+        checkpointSequence = checkpoint.sequence;
+        env.logger.info("restored checkpoint " + checkpoint.sequence + " (" + state.deckSize() + " cards in the deck)");
+        return true;
     }
 
     /**
@@ -233,53 +366,36 @@ public class Dealer implements Runnable {
      * to end the game: 
      */
     private void sleepUntilWokenOrTimeout() {
-        synchronized(table.waitingForDealer){
-            if((reshuffleTime - System.currentTimeMillis()) > env.config.turnTimeoutWarningMillis){
-                try {
-                    table.waitingForDealer.wait(100);
-                }catch(InterruptedException ignored){} 
-            } 
-        } 
+        phase(ThreadAccounting.Phase.IDLE_POLLING);
+        if(state.remainingMillis() > env.config.turnTimeoutWarningMillis)
+            table.waitingForDealer.await(100, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Reset and/or update the countdown and the countdown display.
-     */
-    private void updateTimerDisplay(boolean reset) {
-        if (!reset) {
-            // Recalculating the remaining time
-            long remainingTime = reshuffleTime - System.currentTimeMillis();
-            // Making sure the display isn't negetive - updatetimer is after of the timerloop(in the run) can cost miliseconds
-            if(remainingTime < 0) remainingTime = 0;
+     * Updates the timer display from the turn timer of the state (the countdown, or the time passed in the turn).
+     */
+    private void updateTimerDisplay() {
+        if(env.config.turnTimeoutMillis > 0) {
+            // Making sure the display isn't negetive
+            long remainingTime = Math.max(0, state.remainingMillis());
             // If warning -> timer red
-            if(remainingTime < env.config.turnTimeoutWarningMillis){
-                env.ui.setCountdown(remainingTime,true);
-            }
-            else env.ui.setCountdown(remainingTime,false);
-        }
-        // Reset
-        else {
-            reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
-            env.ui.setCountdown(env.config.turnTimeoutMillis,false);
+            env.ui.setCountdown(remainingTime, remainingTime < env.config.turnTimeoutWarningMillis);
         }
+        else if(env.config.turnTimeoutMillis == 0) env.ui.setElapsed(state.elapsedMillis());
     }
 
     /**
-     * Returns all the cards from the table to the deck.
+     * Clears the table after the state returned all its cards to the deck (a full reshuffle or the end of the game).
      * @PRE: none
      * @POST: for 0 < i < 11, SlotToCard[i] == null;
      */
     private synchronized void removeAllCardsFromTable() {
+        phase(ThreadAccounting.Phase.RESHUFFLE);
         // Put the player thread's on wait
         removeAllCardsFromTable = true;
         for(Player p : players) p.setRemoveAllCardFromTable(true);
-        // return the cards to the deck and shuffle
-        for(int i=0; i <cardsOrder.size(); i++)  {
-            Integer card = table.slotToCard[cardsOrder.get(i)];
-            if(card != null)deck.add(card);
-            table.removeCard(cardsOrder.get(i));
-        }
-        Collections.shuffle(deck); // Shuffle the returned cards
+        for(int slot : state.dealingOrder())
+            if(table.slotToCard[slot] != null) table.removeCard(slot);
         table.clearWaitingQueue(); // Clear waiting list
     }
     
@@ -287,91 +403,97 @@ public class Dealer implements Runnable {
      * Check who is/are the winner/s and displays them.
      */
     private void announceWinners() {
-        String winner = "" + players[0].id;
-        int maxScore = players[0].score();
-        
-        for(int i = 1; i < env.config.players; i++) {
-            if(players[i].score() == maxScore) winner += " " + players[i].id;
-            else if (players[i].score() > maxScore) {
-                winner = "" + (players[i].id); 
-                maxScore = players[i].score();
-                }
+        int[] winners = new int[players.length];
+        int count = 0;
+        int maxScore = Integer.MIN_VALUE;
+        for(Player player : players) {
+            int score = state.score(player.id);
+            if(score > maxScore) {
+                maxScore = score;
+                count = 0;
+            }
+            if(score == maxScore) winners[count++] = player.id;
         }
-        int[] winners = Arrays.stream(winner.split(" ")).mapToInt(Integer::parseInt).toArray();
-        env.ui.announceWinner(winners);
+        env.ui.announceWinner(Arrays.copyOf(winners, count));
     }
 
     // Help methods:
-    private int[] vectorToArray(Vector <Integer> vec) {
-        int[] output = new int[vec.size()];
-        int i = 0;
-        for(Integer num : vec) {
-            output[i] = num;
-            i++;
-        }
-        return output;
+    /**
+     * Freezes a player until the given time and shows the countdown on the display.
+     * @param player   - the player id.
+     * @param deadline - the time the freeze ends at.
+     */
+    public void freeze(int player, long deadline) {
+        freezeScheduler.freeze(player, deadline);
     }
 
-    public void resetTime() {
-        if(env.config.turnTimeoutMillis > 0)
-            updateTimerDisplay(true);
-        else if(env.config.turnTimeoutMillis == 0)
-            updateTimerDisplayForZero(true);
+    /**
+     * @param player - the player id.
+     * @return - the random stream of the player.
+     */
+    public SplittableRandom random(int player) {
+        return state.random(player);
     }
 
-// No time game version:
-    
-    // Timer loop for turnTimeoutMillis < 0
-    private void timerLoopForNoTime() {
-        while (!terminate && isThereASet()) {
-            sleepUntilWokenOrTimeout();
-            removeCardsFromTable();
-            placeCardsOnTable();
-        }
-    } 
+    public long seed() {
+        return state.seed();
+    }
 
-    private boolean isThereASet () {
-        List<Integer> deck = Arrays.stream(table.slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        return !env.util.findSets(deck, 1).isEmpty();
+    /**
+     * @param player - the player id.
+     * @return - the score of the player (the points the dealer gave him - the player's own score may lag behind).
+     * @PRE: the dealer thread ended (or is the caller).
+     */
+    public int score(int player) {
+        return state.score(player);
     }
 
-    //NO LIMITED TIME VERSION
-    private void timerLoopForZero() {
-        // Reset timer
-        startTimer = System.currentTimeMillis();
-        env.ui.setElapsed(0);
-        // Timer loop
-        while (!terminate && isThereASet()) {
-            sleepUntilWokenOrTimeout();
-            updateTimerDisplayForZero(false);
-            removeCardsFromTable();
-            placeCardsOnTable();
-        }
+    /**
+     * @param player - the player id.
+     * @return - the number of penalties the dealer gave the player.
+     * @PRE: the dealer thread ended (or is the caller).
+     */
+    public int penalties(int player) {
+        return state.penalties(player);
     }
 
+    /**
+     * @param player - the player id.
+     * @return - the number of claims of the player the dealer resolved.
+     * @PRE: the dealer thread ended (or is the caller).
+     */
+    public int claims(int player) {
+        return state.claims(player);
+    }
 
-    private void updateTimerDisplayForZero(boolean reset) {
-        long currentTime = System.currentTimeMillis() - startTimer;
-        if (!reset) {
-            env.ui.setElapsed(currentTime);
-        }
-        else {
-            startTimer = System.currentTimeMillis();
-            env.ui.setElapsed(0);
-        }
+    /**
+     * @param player - the player id.
+     * @return - the total number of microseconds the claims of the player waited for the dealer.
+     * @PRE: the dealer thread ended (or is the caller).
+     */
+    public long claimLatencyMicros(int player) {
+        return claimNanos[player] / 1000;
     }
 
-    private void beforePlaceOnTable(){
-        if(deck.size() >= 12){
-            List<Integer> toPlace = new ArrayList<Integer>();
-            do{ // Do until there is a set in the first 12 cards
-                Collections.shuffle(deck);
-                // Put the first 12 cards from the deck
-                for(int i = 0; i<12; i++){
-                    toPlace.add(deck.get(i));
-                }  
-                // Check if there is a set in them
-            }while(env.util.findSets(toPlace, 1).size() == 0); 
-        }
+    public ThreadAccounting accounting() {
+        return accounting;
+    }
+
+    public DealerWatchdog watchdog() {
+        return watchdog;
+    }
+
+    public AdmissionControl admission() {
+        return admission;
+    }
+
+    /**
+     * Marks the phase the dealer thread is in, for the thread accounting, and beats the heartbeat of the dealer loop
+     * (ignored on other threads).
+     */
+    private void phase(ThreadAccounting.Phase phase) {
+        if(account == null || Thread.currentThread() != dealerThread) return;
+        account.enter(phase);
+        watchdog.beat();
     }
 }
@@ -0,0 +1,224 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+
+/**
+ * This class watches the dealer thread from a thread of its own. The dealer beats on every step of its loop and the
+ * players mark the time they start waiting for the dealer; the watchdog flags a dealer loop that lags behind its
+ * heartbeat, and when the dealer (or a player waiting for it) is stalled it writes a thread dump with the owners of
+ * all the monitors to the log. The lags and the stalls are counted in the game metrics.
+ */
+public class DealerWatchdog implements Runnable {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The clock of the heartbeats and the waits (System.nanoTime).
+     */
+    private final LongSupplier clock;
+
+    /**
+     * The time of the last heartbeat of the dealer.
+     */
+    private volatile long heartbeat;
+
+    /**
+     * The time each player started waiting for the dealer at (0 if he is not waiting).
+     */
+    private final AtomicLongArray waitingSince;
+
+    /**
+     * The dealer loop lag that is flagged, and the lag (or player wait) that is a stall.
+     */
+    private final long lagNanos;
+    private final long stallNanos;
+
+    /**
+     * True iff the current lag of the dealer was flagged / dumped (used only by the watchdog thread).
+     */
+    private boolean lagging;
+    private boolean stalled;
+
+    /**
+     * The wait of each player that was dumped (used only by the watchdog thread).
+     */
+    private final long[] stalledWait;
+
+    /**
+     * The watchdog thread.
+     */
+    private volatile Thread thread;
+
+    /**
+     * True iff the watchdog should be terminated.
+     */
+    private volatile boolean terminate;
+
+    public DealerWatchdog(Env env) {
+        this(env, System::nanoTime);
+    }
+
+    /**
+     * Constructor for testing.
+     *
+     * @param env   - the game environment object.
+     * @param clock - the clock of the heartbeats and the waits (in nanoseconds).
+     */
+    DealerWatchdog(Env env, LongSupplier clock) {
+        this.env = env;
+        this.clock = clock;
+        this.waitingSince = new AtomicLongArray(env.config.players);
+        this.stalledWait = new long[env.config.players];
+        this.lagNanos = env.config.watchdogLagMillis * 1_000_000;
+        this.stallNanos = env.config.watchdogStallMillis * 1_000_000;
+        this.heartbeat = clock.getAsLong();
+    }
+
+    /**
+     * The watchdog thread starts here (checks the dealer and the players periodically).
+     */
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        long interval = Math.max(1, Math.min(env.config.watchdogLagMillis, env.config.watchdogStallMillis) / 4);
+        beat();
+        while (!terminate) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException ignored) {}
+            if (!terminate) check();
+        }
+        env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * @return - true iff the watchdog is configured.
+     */
+    public boolean enabled() {
+        return lagNanos > 0 || stallNanos > 0;
+    }
+
+    /**
+     * Called by the dealer on every step of its loop.
+     */
+    public void beat() {
+        heartbeat = clock.getAsLong();
+    }
+
+    /**
+     * Called by a player when he starts (or keeps) waiting for the dealer.
+     * @param player - the player id.
+     */
+    public void waiting(int player) {
+        waitingSince.compareAndSet(player, 0, clock.getAsLong());
+    }
+
+    /**
+     * Called by a player when he stops waiting for the dealer.
+     * @param player - the player id.
+     */
+    public void resumed(int player) {
+        waitingSince.set(player, 0);
+    }
+
+    /**
+     * Called when the watchdog should be terminated.
+     */
+    public void terminate() {
+        terminate = true;
+        Thread watchdog = thread;
+        if (watchdog != null) {
+            watchdog.interrupt();
+            try {
+                watchdog.join();
+            } catch (InterruptedException ignored) {}
+        }
+    }
+
+    /**
+     * Checks the heartbeat of the dealer and the waits of the players.
+     */
+    void check() {
+        long now = clock.getAsLong();
+        long lag = now - heartbeat;
+        if (lag > env.metrics.get("watchdog.maxLagMillis") * 1_000_000)
+            env.metrics.set("watchdog.maxLagMillis", lag / 1_000_000);
+
+        if (lagNanos > 0 && lag > lagNanos) {
+            if (!lagging) {
+                lagging = true;
+                env.metrics.increment("watchdog.lags");
+                env.logger.warning("dealer loop lags by " + lag / 1_000_000 + " ms");
+            }
+        } else lagging = false;
+
+        // a single dump for all the stalls found in this check
+        StringBuilder stalls = new StringBuilder();
+        if (stallNanos > 0 && lag > stallNanos) {
+            if (!stalled) {
+                stalled = true;
+                env.metrics.increment("watchdog.stalls");
+                stalls.append("dealer stalled for ").append(lag / 1_000_000).append(" ms");
+            }
+        } else stalled = false;
+
+        for (int player = 0; player < stalledWait.length; player++) {
+            long since = waitingSince.get(player);
+            if (since == 0) continue;
+            long wait = now - since;
+            if (wait > env.metrics.get("watchdog.maxPlayerWaitMillis") * 1_000_000)
+                env.metrics.set("watchdog.maxPlayerWaitMillis", wait / 1_000_000);
+            if (stallNanos > 0 && wait > stallNanos && stalledWait[player] != since) {
+                stalledWait[player] = since;
+                env.metrics.increment("watchdog.playerStalls");
+                stalls.append(stalls.length() == 0 ? "" : ", ").append("player ").append(player + 1)
+                        .append(" waits for the dealer for ").append(wait / 1_000_000).append(" ms");
+            }
+        }
+        if (stalls.length() > 0) dump(stalls.toString());
+    }
+
+    /**
+     * Writes a stall and a dump of all the threads (with their locked monitors and synchronizers) to the log.
+     * @param reason - the stall.
+     */
+    private void dump(String reason) {
+        if (!env.logger.isLoggable(Level.SEVERE)) return;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        StringBuilder sb = new StringBuilder(reason).append(" - thread dump:");
+        for (ThreadInfo info : threads.dumpAllThreads(threads.isObjectMonitorUsageSupported(), threads.isSynchronizerUsageSupported())) {
+            sb.append(System.lineSeparator()).append('"').append(info.getThreadName()).append("\" ").append(info.getThreadState());
+            if (info.getLockName() != null) sb.append(" on ").append(info.getLockName());
+            if (info.getLockOwnerName() != null) sb.append(" owned by \"").append(info.getLockOwnerName()).append('"');
+            StackTraceElement[] stack = info.getStackTrace();
+            for (int depth = 0; depth < stack.length; depth++) {
+                sb.append(System.lineSeparator()).append("\tat ").append(stack[depth]);
+                for (MonitorInfo monitor : info.getLockedMonitors())
+                    if (monitor.getLockedStackDepth() == depth) sb.append(System.lineSeparator()).append("\t- locked ").append(monitor);
+            }
+            for (LockInfo lock : info.getLockedSynchronizers())
+                sb.append(System.lineSeparator()).append("\t- locked ").append(lock);
+        }
+        long[] deadlocked = threads.isSynchronizerUsageSupported() ? threads.findDeadlockedThreads() : threads.findMonitorDeadlockedThreads();
+        if (deadlocked != null) {
+            env.metrics.increment("watchdog.deadlocks");
+            sb.append(System.lineSeparator()).append("deadlocked threads:");
+            for (ThreadInfo info : threads.getThreadInfo(deadlocked))
+                if (info != null) sb.append(" \"").append(info.getThreadName()).append('"');
+        }
+        env.logger.severe(sb.toString());
+    }
+}
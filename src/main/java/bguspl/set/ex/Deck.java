@@ -0,0 +1,224 @@
+package bguspl.set.ex;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * This class holds the cards that are left in the dealer's deck.
+ * The cards are kept in a primitive array: the cards before the draw cursor were drawn, the rest are in the deck.
+ *
+ * @inv 0 <= top <= cards.length
+ * @inv cards[index[card]] == card
+ * @inv contains(card) iff index[card] >= top
+ */
+public class Deck {
+
+    /**
+     * A permutation of all the card ids - cards[top..cards.length-1] are the cards left in the deck.
+     */
+    private final int[] cards;
+
+    /**
+     * Mapping between a card and its position in the cards array.
+     */
+    private final int[] index;
+
+    /**
+     * A bit per card - on iff the card is in the deck.
+     */
+    private final long[] members;
+
+    /**
+     * The draw cursor - the position of the next card to be drawn.
+     */
+    private int top;
+
+    /**
+     * The random generator used for shuffling.
+     */
+    private final SplittableRandom random;
+
+    /**
+     * The class constructor - the deck starts with all the cards, unshuffled.
+     *
+     * @param deckSize - the number of cards in the game.
+     * @param random   - the random generator used for shuffling.
+     */
+    public Deck(int deckSize, SplittableRandom random) {
+        this.random = random;
+        cards = new int[deckSize];
+        index = new int[deckSize];
+        members = new long[(deckSize + 63) >>> 6];
+        for (int card = 0; card < deckSize; card++) {
+            cards[card] = card;
+            index[card] = card;
+            members[card >>> 6] |= 1L << card;
+        }
+    }
+
+    /**
+     * @return - the number of cards left in the deck.
+     */
+    public int size() {
+        return cards.length - top;
+    }
+
+    public boolean isEmpty() {
+        return top == cards.length;
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - true iff the card is still in the deck.
+     */
+    public boolean contains(int card) {
+        return (members[card >>> 6] & (1L << card)) != 0;
+    }
+
+    /**
+     * @param i - the position of the card from the top of the deck.
+     * @return - the i-th card of the deck.
+     * @PRE: 0 <= i < size()
+     */
+    public int get(int i) {
+        return cards[top + i];
+    }
+
+    /**
+     * Removes the card at the top of the deck.
+     * @return - the card drawn.
+     * @PRE: !isEmpty()
+     * @POST: !contains(card)
+     */
+    public int draw() {
+        int card = cards[top++];
+        members[card >>> 6] &= ~(1L << card);
+        return card;
+    }
+
+    /**
+     * Returns a drawn card to the top of the deck.
+     * @param card - the card id.
+     * @PRE: !contains(card)
+     * @POST: contains(card) && get(0) == card
+     */
+    public void putBack(int card) {
+        swap(index[card], --top);
+        members[card >>> 6] |= 1L << card;
+    }
+
+    /**
+     * Shuffles all the cards left in the deck.
+     */
+    public void shuffle() {
+        shuffle(size());
+    }
+
+    /**
+     * Partially shuffles the deck (Fisher-Yates) - only the top count cards are drawn uniformly from the whole deck.
+     * @param count - the number of cards at the top of the deck to shuffle.
+     */
+    public void shuffle(int count) {
+        int end = Math.min(top + count, cards.length - 1);
+        for (int i = top; i < end; i++)
+            swap(i, i + random.nextInt(cards.length - i));
+    }
+
+    /**
+     * Shuffles the top cards of the deck among themselves, leaving the rest of the deck in place.
+     * @param count - the number of cards at the top of the deck to shuffle.
+     */
+    public void permuteTop(int count) {
+        int end = Math.min(top + count, cards.length);
+        for (int i = end - 1; i > top; i--)
+            swap(i, top + random.nextInt(i - top + 1));
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - the position of the card from the top of the deck, or -1 if it is not in the deck.
+     */
+    public int position(int card) {
+        return contains(card) ? index[card] - top : -1;
+    }
+
+    /**
+     * Moves a card of the deck to the given position, the card that was there takes its old place.
+     * @param card - the card id.
+     * @param i    - the position from the top of the deck.
+     * @PRE: contains(card) && 0 <= i < size()
+     * @POST: get(i) == card
+     */
+    public void moveTo(int card, int i) {
+        swap(index[card], top + i);
+    }
+
+    /**
+     * @return - a read only view of the cards left in the deck (from top to bottom).
+     */
+    public List<Integer> asList() {
+        return new AbstractList<Integer>() {
+            @Override
+            public Integer get(int i) {
+                return Deck.this.get(i);
+            }
+
+            @Override
+            public int size() {
+                return Deck.this.size();
+            }
+        };
+    }
+
+    /**
+     * @return - a copy of the cards left in the deck (from top to bottom).
+     */
+    public int[] toArray() {
+        return Arrays.copyOfRange(cards, top, cards.length);
+    }
+
+    /**
+     * Replaces the cards left in the deck (used to restore a saved game).
+     * @param remaining - the cards that should be left in the deck, from top to bottom.
+     * @POST: size() == remaining.length && get(i) == remaining[i]
+     */
+    public void reset(int[] remaining) {
+        Arrays.fill(members, 0);
+        for (int card : remaining) members[card >>> 6] |= 1L << card;
+        // the drawn cards first, in their current order
+        int position = 0;
+        for (int card : cards.clone())
+            if (!contains(card)) place(card, position++);
+        top = position;
+        for (int card : remaining) place(card, position++);
+    }
+
+    private void place(int card, int position) {
+        cards[position] = card;
+        index[card] = position;
+    }
+
+    /**
+     * Shuffles an array in place (Fisher-Yates).
+     * @param array  - the array to shuffle.
+     * @param random - the random generator to use.
+     */
+    static void shuffle(int[] array, SplittableRandom random) {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = array[i];
+            array[i] = array[j];
+            array[j] = tmp;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int first = cards[i], second = cards[j];
+        cards[i] = second;
+        cards[j] = first;
+        index[second] = i;
+        index[first] = j;
+    }
+}
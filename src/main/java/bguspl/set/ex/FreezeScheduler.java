@@ -0,0 +1,138 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * This class keeps the freeze deadlines of all the players and updates their freeze countdowns on the display from
+ * a single timer thread, so a frozen player does not need a sleeping thread of its own. It only drives the display:
+ * whether a player is frozen is decided by the player himself (Player.isFrozen).
+ */
+public class FreezeScheduler implements Runnable {
+
+    /**
+     * The interval between the updates of a freeze countdown on the display.
+     */
+    private static final long TICK_MILLIS = 1000;
+
+    /**
+     * A scheduled update of a player's freeze countdown.
+     */
+    private static class Tick implements Comparable<Tick> {
+        final long time;
+        final int player;
+        final long deadline;
+
+        Tick(long time, int player, long deadline) {
+            this.time = time;
+            this.player = player;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(Tick other) {
+            return Long.compare(time, other.time);
+        }
+    }
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The time each player's freeze ends at (guarded by this).
+     */
+    private final long[] deadlines;
+
+    /**
+     * The pending countdown updates, by time (guarded by this).
+     */
+    private final PriorityQueue<Tick> ticks;
+
+    /**
+     * The timer thread.
+     */
+    private volatile Thread thread;
+
+    /**
+     * True iff the scheduler should be terminated.
+     */
+    private volatile boolean terminate;
+
+    public FreezeScheduler(Env env) {
+        this.env = env;
+        this.deadlines = new long[env.config.players];
+        this.ticks = new PriorityQueue<>();
+    }
+
+    /**
+     * The timer thread starts here (main loop of the freeze countdowns).
+     */
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        while (!terminate) {
+            Tick tick = nextTick();
+            if (tick == null) continue;
+            long remaining = tick.deadline - System.currentTimeMillis();
+            if (remaining > 0) {
+                // rounded up, so the display counts down whole seconds even when the timer wakes up late
+                env.ui.setFreeze(tick.player, (remaining + TICK_MILLIS - 1) / TICK_MILLIS * TICK_MILLIS);
+                // the next update is on the next whole second before the deadline
+                long next = tick.deadline - ((remaining - 1) / TICK_MILLIS) * TICK_MILLIS;
+                synchronized (this) {
+                    if (deadlines[tick.player] == tick.deadline) ticks.add(new Tick(next, tick.player, tick.deadline));
+                }
+            } else env.ui.setFreeze(tick.player, 0);
+        }
+        env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * Waits for the next due countdown update.
+     * @return - the update, or null if there is nothing to update (terminated or the freeze was replaced).
+     */
+    private synchronized Tick nextTick() {
+        long now = System.currentTimeMillis();
+        while (!terminate && (ticks.isEmpty() || ticks.peek().time > now)) {
+            try {
+                if (ticks.isEmpty()) wait();
+                else wait(ticks.peek().time - now);
+            } catch (InterruptedException ignored) {}
+            now = System.currentTimeMillis();
+        }
+        if (terminate) return null;
+        Tick tick = ticks.poll();
+        return deadlines[tick.player] == tick.deadline ? tick : null;
+    }
+
+    /**
+     * Freezes a player until the given time (replacing his current freeze, if any).
+     * @param player   - the player id.
+     * @param deadline - the time the freeze ends at.
+     */
+    public synchronized void freeze(int player, long deadline) {
+        deadlines[player] = deadline;
+        ticks.add(new Tick(System.currentTimeMillis(), player, deadline));
+        notifyAll();
+    }
+
+    /**
+     * Called when the scheduler should be terminated.
+     */
+    public void terminate() {
+        synchronized (this) {
+            terminate = true;
+            Arrays.fill(deadlines, 0);
+            ticks.clear();
+            notifyAll();
+        }
+        if (thread != null) try {
+            thread.join();
+        } catch (InterruptedException ignored) {}
+    }
+}
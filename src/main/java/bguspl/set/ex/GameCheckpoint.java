@@ -0,0 +1,186 @@
+package bguspl.set.ex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * An immutable copy of the state of a game in progress: the board (cards and tokens), the deck, the scores and the
+ * timer. It is captured by the dealer between the steps of its loop (copying only the deck and the scores - the board
+ * is already an immutable snapshot) and written by the checkpoint writer to one of two files in turn, so a crash
+ * while writing one of them leaves the other one whole.
+ *
+ * File layout: magic, version, sequence number, payload length, CRC32 of the payload, payload.
+ */
+public final class GameCheckpoint {
+
+    private static final int MAGIC = 0x53455443; // "SETC"
+    private static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4;
+
+    /**
+     * The number of the checkpoint in the game (later checkpoints have larger numbers).
+     */
+    public final long sequence;
+
+    /**
+     * The board when the checkpoint was captured.
+     */
+    public final BoardSnapshot board;
+
+    /**
+     * The cards left in the deck, from the top.
+     */
+    final int[] deck;
+
+    /**
+     * The score and the number of penalties of each player.
+     */
+    final int[] scores;
+    final int[] penalties;
+
+    /**
+     * The milliseconds left until the reshuffle (or elapsed since the last reset, if the game shows the elapsed time).
+     */
+    public final long timerMillis;
+
+    GameCheckpoint(long sequence, BoardSnapshot board, int[] deck, int[] scores, int[] penalties, long timerMillis) {
+        this.sequence = sequence;
+        this.board = board;
+        this.deck = deck;
+        this.scores = scores;
+        this.penalties = penalties;
+        this.timerMillis = timerMillis;
+    }
+
+    /**
+     * @return - the number of players in the game.
+     */
+    public int players() {
+        return scores.length;
+    }
+
+    /**
+     * @param player - the player id.
+     * @return - the score of the player.
+     */
+    public int score(int player) {
+        return scores[player];
+    }
+
+    /**
+     * @return - the number of bytes of the checkpoint file.
+     */
+    int encodedSize() {
+        int tokens = 0;
+        for (int player = 0; player < scores.length; player++) tokens += board.tokenCount(player);
+        return HEADER_BYTES + 4 * 4 + 8 + 4 * board.tableSize() + 4 * deck.length + 4 * 3 * scores.length + 4 * tokens;
+    }
+
+    /**
+     * Encodes the checkpoint file into a buffer.
+     * @param buffer - a buffer with at least encodedSize() bytes remaining.
+     * @param crc    - a checksum to reuse.
+     */
+    void encode(ByteBuffer buffer, CRC32 crc) {
+        int start = buffer.position();
+        buffer.position(start + HEADER_BYTES);
+        buffer.putInt(board.tableSize()).putInt(scores.length).putInt(deck.length).putInt(0).putLong(timerMillis);
+        for (int slot = 0; slot < board.tableSize(); slot++) buffer.putInt(board.card(slot));
+        for (int card : deck) buffer.putInt(card);
+        for (int player = 0; player < scores.length; player++) buffer.putInt(scores[player]).putInt(penalties[player]);
+        for (int player = 0; player < scores.length; player++) {
+            buffer.putInt(board.tokenCount(player));
+            for (int slot = 0; slot < board.tableSize(); slot++)
+                if (board.hasToken(player, slot)) buffer.putInt(slot);
+        }
+        int end = buffer.position();
+
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(start + HEADER_BYTES).limit(end);
+        crc.reset();
+        crc.update(payload);
+        buffer.putInt(start, MAGIC).putInt(start + 4, VERSION).putLong(start + 8, sequence)
+                .putInt(start + 16, end - start - HEADER_BYTES).putInt(start + 20, (int) crc.getValue());
+    }
+
+    /**
+     * Decodes a checkpoint file.
+     * @param buffer - the contents of the file.
+     * @return - the checkpoint, or null if the file is not a whole checkpoint (torn, corrupt or of another version).
+     */
+    static GameCheckpoint decode(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+        long sequence = buffer.getLong();
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) return null;
+        ByteBuffer payload = buffer.slice();
+        payload.limit(length);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != checksum) return null;
+
+        try {
+            int tableSize = payload.getInt();
+            int players = payload.getInt();
+            int deckSize = payload.getInt();
+            payload.getInt(); // reserved
+            long timerMillis = payload.getLong();
+            BoardSnapshot board = BoardSnapshot.empty(tableSize, players);
+            for (int slot = 0; slot < tableSize; slot++) {
+                int card = payload.getInt();
+                if (card >= 0) board = board.withCard(0, slot, card);
+            }
+            int[] deck = new int[deckSize];
+            for (int i = 0; i < deckSize; i++) deck[i] = payload.getInt();
+            int[] scores = new int[players];
+            int[] penalties = new int[players];
+            for (int player = 0; player < players; player++) {
+                scores[player] = payload.getInt();
+                penalties[player] = payload.getInt();
+            }
+            for (int player = 0; player < players; player++) {
+                int tokens = payload.getInt();
+                for (int i = 0; i < tokens; i++) board = board.withToken(player, payload.getInt(), true);
+            }
+            return new GameCheckpoint(sequence, board, deck, scores, penalties, timerMillis);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param base  - the base name of the checkpoint files.
+     * @param which - the file (0 or 1).
+     * @return - the path of the file.
+     */
+    static Path file(Path base, int which) {
+        return base.resolveSibling(base.getFileName() + (which == 0 ? ".a" : ".b") + ".ckpt");
+    }
+
+    /**
+     * Loads the latest whole checkpoint of a game.
+     * @param base - the base name of the checkpoint files.
+     * @return - the checkpoint with the largest sequence number of the two files, or null if there is none.
+     */
+    public static GameCheckpoint load(Path base) throws IOException {
+        GameCheckpoint latest = null;
+        for (int which = 0; which < 2; which++) {
+            Path path = file(base, which);
+            if (!Files.exists(path)) continue;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) ;
+                buffer.flip();
+                GameCheckpoint checkpoint = decode(buffer);
+                if (checkpoint != null && (latest == null || checkpoint.sequence > latest.sequence)) latest = checkpoint;
+            }
+        }
+        return latest;
+    }
+}
@@ -0,0 +1,624 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The rules of the game as a pure, single threaded state machine: the deck, the cards and tokens on the table, the
+ * scores, the freezes and the clock of a game, changed only by key presses (apply) and by the passing of time (tick).
+ * There are no threads, locks, sleeps or UI calls - the time is the game clock, advanced by the caller - so a core
+ * can play millions of presses a second (see Simulation), and a game is replayed exactly from its seed and its
+ * presses. A claim is checked as soon as the player places his last token, a legal set scores and its cards are
+ * replaced, a wrong one is penalized and its tokens removed, the table is reshuffled by the reshuffle policy when the
+ * turn times out (or, without a countdown, when the table has no set), and the game is over when the deck and the
+ * table have no set left.
+ * The threaded game plays by the same rules: the dealer thread drives a game state with the real time - it passes
+ * it the claims of the players (resolve) and the time, and keeps the table, the display and the players in step
+ * with it.
+ * The state is itself a read-only view of its board (see Board), so a strategy reads it without a copy.
+ *
+ * @inv 0 <= tokenCount(player) <= config.featureSize
+ */
+public class GameState implements Board {
+
+    /**
+     * The number of candidate sets checked at once when searching for a set (see hasSet).
+     */
+    private static final int BATCH = 64;
+
+    /**
+     * The outcome of a claim (see resolve).
+     */
+    public enum Verdict {
+        /** A legal set - the player scores and its cards are replaced. */
+        POINT,
+        /** Not a legal set - the player is penalized and the tokens of the claim are removed. */
+        PENALTY,
+        /** A card of the claim was taken by an earlier claim - the claim is not answered. */
+        DROPPED
+    }
+
+    /**
+     * The game environment object (only its config, util and logger are used).
+     */
+    private final Env env;
+
+    private final long seed;
+    private final Deck deck;
+    private final DealGenerator dealGenerator;
+    private final SplittableRandom[] playerRandoms;
+    private final ReshufflePolicy reshufflePolicy;
+
+    /**
+     * The order the slots are dealt in.
+     */
+    private final int[] cardsOrder;
+
+    /**
+     * The card in each slot (-1 if none).
+     */
+    private final int[] slots;
+
+    /**
+     * The tokens of each player - a bit per slot, words consecutive longs per player (as in BoardSnapshot), and the
+     * number of tokens of each player.
+     */
+    private final long[] tokens;
+    private final int words;
+    private final int[] tokenCounts;
+
+    private final int[] scores;
+    private final int[] penalties;
+    private final int[] claims;
+
+    /**
+     * The game time each player is frozen until.
+     */
+    private final long[] frozenUntil;
+
+    /**
+     * The game time (in milliseconds since the game started), the time the turn started at, and the time it times
+     * out at (Long.MAX_VALUE if there is no countdown).
+     */
+    private long clock;
+    private long turnStart;
+    private long timeoutAt;
+
+    private boolean over;
+
+    /**
+     * The number of presses applied, the number of reshuffles (and of the full ones among them), and the number of
+     * cards the partial reshuffles replaced.
+     */
+    private long presses;
+    private int reshuffles;
+    private int fullReshuffles;
+    private int cardsReplaced;
+
+    /**
+     * The number of changes to the board and to its cards, and the latest copy of the board (null if it changed).
+     */
+    private long version;
+    private long cardsVersion;
+    private BoardSnapshot snapshot;
+
+    /**
+     * Buffers reused by every claim and every search for a set, so the presses do not allocate: the claim of a
+     * single player, the candidate sets and their results, the slots taken by the claims, the cards searched and
+     * the current combination of them.
+     */
+    private final int[] claimPlayer = new int[1];
+    private final int[][] claimSlots;
+    private final Verdict[] claimVerdict = new Verdict[1];
+    private int[] candidates;
+    private boolean[] valid;
+    private final boolean[] taken;
+    private final int[] searched;
+    private final int[] combination;
+
+    /**
+     * @param env  - the game environment object.
+     * @param seed - the seed of the game.
+     */
+    public GameState(Env env, long seed) {
+        this.env = env;
+        this.seed = seed;
+        SplittableRandom random = new SplittableRandom(seed);
+        deck = new Deck(env.config.deckSize, random.split());
+        deck.shuffle();
+        cardsOrder = new int[env.config.tableSize];
+        for (int i = 0; i < cardsOrder.length; i++) cardsOrder[i] = i;
+        Deck.shuffle(cardsOrder, random.split());
+        dealGenerator = new DealGenerator(env, random.split());
+        playerRandoms = new SplittableRandom[env.config.players];
+        for (int i = 0; i < playerRandoms.length; i++) playerRandoms[i] = random.split();
+        reshufflePolicy = Config.parsePolicy(env.logger, ReshufflePolicy.class, env.config.reshufflePolicy,
+                ReshufflePolicy.FULL);
+
+        slots = new int[env.config.tableSize];
+        Arrays.fill(slots, -1);
+        words = (slots.length + 63) >>> 6;
+        tokens = new long[env.config.players * words];
+        tokenCounts = new int[env.config.players];
+        scores = new int[env.config.players];
+        penalties = new int[env.config.players];
+        claims = new int[env.config.players];
+        frozenUntil = new long[env.config.players];
+        claimSlots = new int[1][env.config.featureSize];
+        candidates = new int[BATCH * env.config.featureSize];
+        valid = new boolean[BATCH];
+        taken = new boolean[slots.length];
+        searched = new int[env.config.deckSize];
+        combination = new int[env.config.featureSize];
+
+        if (env.config.turnTimeoutMillis <= 0) dealGenerator.stack(deck, slots.length);
+        deal();
+        newTurn(clock);
+        boardChanged();
+    }
+
+    /**
+     * Applies a key press of a player: places or removes his token on the slot, and checks his claim if it was his
+     * last token. Ignored if the game is over, the player is frozen or the slot is empty.
+     * @param player - the id of the player.
+     * @param slot   - the slot pressed.
+     * @return - true iff the press changed the board.
+     */
+    public boolean apply(int player, int slot) {
+        presses++;
+        if (over || clock < frozenUntil[player] || slots[slot] < 0) return false;
+        int i = player * words + (slot >>> 6);
+        long bit = 1L << slot;
+        tokens[i] ^= bit;
+        snapshot = null;
+        version++;
+        if ((tokens[i] & bit) == 0) {
+            tokenCounts[player]--;
+            return true;
+        }
+        if (++tokenCounts[player] == env.config.featureSize) {
+            claimPlayer[0] = player;
+            int count = 0;
+            for (int claimed = 0; claimed < slots.length; claimed++)
+                if (hasToken(player, claimed)) claimSlots[0][count++] = claimed;
+            resolve(claimPlayer, claimSlots, claimVerdict);
+        }
+        return true;
+    }
+
+    /**
+     * Advances the game clock. The table is reshuffled whenever the turn times out meanwhile.
+     * @param millis - the time passed (in milliseconds).
+     */
+    public void tick(long millis) {
+        clock += millis;
+        while (!over && clock >= timeoutAt) {
+            long at = timeoutAt;
+            reshuffle();
+            newTurn(at);
+            boardChanged();
+        }
+    }
+
+    /**
+     * Resolves claims as a single batch: the claims are checked at once, a claim on a card taken by an earlier claim
+     * of the batch is dropped (the earliest claim wins), the legal sets score and all their cards are replaced at
+     * once, and the wrong claims are penalized and their tokens removed.
+     * @param players - the player of each claim, in the order the claims were made.
+     * @param claims  - the slots of each claim (config.featureSize slots with cards).
+     * @return - the verdict of each claim.
+     */
+    public Verdict[] resolve(int[] players, int[][] claims) {
+        Verdict[] verdicts = new Verdict[players.length];
+        resolve(players, claims, verdicts);
+        return verdicts;
+    }
+
+    /**
+     * Resolves claims as a single batch (see resolve) into the given verdicts.
+     */
+    private void resolve(int[] players, int[][] claims, Verdict[] verdicts) {
+        int size = env.config.featureSize;
+        if (valid.length < players.length) {
+            candidates = new int[players.length * size];
+            valid = new boolean[players.length];
+        }
+        for (int i = 0; i < players.length; i++)
+            for (int j = 0; j < size; j++) candidates[i * size + j] = slots[claims[i][j]];
+        env.util.testSets(candidates, players.length, valid);
+
+        Arrays.fill(taken, false);
+        boolean scored = false;
+        for (int i = 0; i < players.length; i++) {
+            int player = players[i];
+            boolean conflict = false;
+            for (int slot : claims[i]) conflict |= taken[slot];
+            if (conflict) {
+                verdicts[i] = Verdict.DROPPED;
+                continue;
+            }
+            this.claims[player]++;
+            if (valid[i]) {
+                verdicts[i] = Verdict.POINT;
+                scores[player]++;
+                frozenUntil[player] = clock + env.config.pointFreezeMillis;
+                for (int slot : claims[i]) taken[slot] = true;
+                scored = true;
+            } else {
+                verdicts[i] = Verdict.PENALTY;
+                penalties[player]++;
+                frozenUntil[player] = clock + env.config.penaltyFreezeMillis;
+                for (int slot : claims[i]) removeToken(player, slot);
+            }
+        }
+        if (scored) {
+            for (int slot = 0; slot < slots.length; slot++)
+                if (taken[slot]) removeCard(slot);
+            deal();
+            newTurn(clock);
+            boardChanged();
+        }
+    }
+
+    /**
+     * Takes the tokens of the players from a board with the same cards (the tokens of the threaded game are placed
+     * on the table, not applied to the state). Tokens on slots without a card here are ignored.
+     * @param board - the board.
+     */
+    public void tokensFrom(BoardSnapshot board) {
+        Arrays.fill(tokens, 0L);
+        Arrays.fill(tokenCounts, 0);
+        for (int player = 0; player < tokenCounts.length; player++)
+            for (int slot = 0; slot < slots.length; slot++)
+                if (slots[slot] >= 0 && board.hasToken(player, slot)) {
+                    tokens[player * words + (slot >>> 6)] |= 1L << slot;
+                    tokenCounts[player]++;
+                }
+        version++;
+        snapshot = null;
+    }
+
+    /**
+     * Restores a saved game (the tokens are placed again by the players).
+     * @param deck        - the cards of the deck (in order).
+     * @param board       - the cards on the table.
+     * @param scores      - the score of each player.
+     * @param penalties   - the penalties of each player.
+     * @param timerMillis - the time left in the turn (the time passed in it if there is no countdown).
+     */
+    public void restore(int[] deck, BoardSnapshot board, int[] scores, int[] penalties, long timerMillis) {
+        this.deck.reset(deck);
+        Arrays.fill(tokens, 0L);
+        Arrays.fill(tokenCounts, 0);
+        for (int slot = 0; slot < slots.length; slot++) slots[slot] = board.card(slot);
+        System.arraycopy(scores, 0, this.scores, 0, this.scores.length);
+        System.arraycopy(penalties, 0, this.penalties, 0, this.penalties.length);
+        cardsVersion++;
+        version++;
+        snapshot = null;
+        if (env.config.turnTimeoutMillis > 0) {
+            turnStart = clock;
+            timeoutAt = clock + timerMillis;
+        } else newTurn(clock - timerMillis);
+        over = false;
+        boardChanged();
+    }
+
+    /**
+     * Ends the game if no set is left, and reshuffles a table without a set when there is no countdown.
+     */
+    private void boardChanged() {
+        while (true) {
+            int n = 0;
+            for (int card : slots)
+                if (card >= 0) searched[n++] = card;
+            if (hasSet(searched, n)) return;
+            for (int card : deck.toArray()) searched[n++] = card;
+            if (!hasSet(searched, n)) {
+                over = true;
+                return;
+            }
+            // without a countdown a table with no set is reshuffled at once
+            if (env.config.turnTimeoutMillis > 0) return;
+            reshuffle();
+            newTurn(clock);
+        }
+    }
+
+    /**
+     * Checks whether some of the cards form a legal set - the combinations are checked in batches (Util.testSets)
+     * in the buffers of the state.
+     * @param cards - the cards.
+     * @param n     - the number of cards (the first n of the array).
+     * @return - true iff there is a legal set among the cards.
+     */
+    private boolean hasSet(int[] cards, int n) {
+        int r = combination.length;
+        if (n < r) return false;
+        for (int i = 0; i < r; i++) combination[i] = i;
+        int count = 0;
+        while (combination[r - 1] < n) {
+            for (int i = 0; i < r; i++) candidates[count * r + i] = cards[combination[i]];
+            if (++count == BATCH) {
+                if (anyValid(count)) return true;
+                count = 0;
+            }
+
+            // the next combination in lexicographic order
+            int t = r - 1;
+            while (t != 0 && combination[t] == n - r + t) --t;
+            combination[t]++;
+            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+        }
+        return count > 0 && anyValid(count);
+    }
+
+    /**
+     * @return - true iff one of the first count candidates is a legal set.
+     */
+    private boolean anyValid(int count) {
+        env.util.testSets(candidates, count, valid);
+        for (int i = 0; i < count; i++)
+            if (valid[i]) return true;
+        return false;
+    }
+
+    /**
+     * Reshuffles the table by the reshuffle policy.
+     */
+    private void reshuffle() {
+        reshuffles++;
+        if (reshufflePolicy == ReshufflePolicy.PARTIAL) {
+            int[] dealt = new int[slots.length];
+            int[] cards = new int[slots.length];
+            int[] counts = new int[slots.length];
+            int n = 0;
+            for (int slot : cardsOrder)
+                if (slots[slot] >= 0) {
+                    for (int player = 0; player < tokenCounts.length; player++)
+                        if (hasToken(player, slot)) counts[n]++;
+                    dealt[n] = slot;
+                    cards[n++] = slots[slot];
+                }
+            int[] replaced = dealGenerator.stackReplacement(Arrays.copyOf(cards, n), Arrays.copyOf(counts, n), deck);
+            if (replaced != null) {
+                for (int i : replaced) removeCard(dealt[i]);
+                for (int i : replaced) placeCard(dealt[i], deck.draw());
+                for (int i : replaced) deck.putBack(cards[i]);
+                deck.shuffle();
+                cardsReplaced += replaced.length;
+                return;
+            }
+        }
+        fullReshuffles++;
+        for (int slot : cardsOrder)
+            if (slots[slot] >= 0) {
+                int card = slots[slot];
+                removeCard(slot);
+                deck.putBack(card);
+            }
+        deck.shuffle();
+        if (env.config.turnTimeoutMillis <= 0) dealGenerator.stack(deck, slots.length);
+        deal();
+    }
+
+    /**
+     * Fills the empty slots from the deck, in the dealing order.
+     */
+    private void deal() {
+        for (int slot : cardsOrder)
+            if (slots[slot] < 0 && !deck.isEmpty()) placeCard(slot, deck.draw());
+    }
+
+    private void placeCard(int slot, int card) {
+        slots[slot] = card;
+        cardsVersion++;
+        version++;
+        snapshot = null;
+    }
+
+    /**
+     * Removes the card of a slot and all the tokens on it.
+     */
+    private void removeCard(int slot) {
+        long bit = 1L << slot;
+        for (int player = 0; player < tokenCounts.length; player++) {
+            int i = player * words + (slot >>> 6);
+            if ((tokens[i] & bit) != 0) {
+                tokens[i] &= ~bit;
+                tokenCounts[player]--;
+            }
+        }
+        slots[slot] = -1;
+        cardsVersion++;
+        version++;
+        snapshot = null;
+    }
+
+    /**
+     * Removes a token of a player (if he has one on the slot).
+     */
+    private void removeToken(int player, int slot) {
+        int i = player * words + (slot >>> 6);
+        long bit = 1L << slot;
+        if ((tokens[i] & bit) == 0) return;
+        tokens[i] &= ~bit;
+        tokenCounts[player]--;
+        version++;
+        snapshot = null;
+    }
+
+    /**
+     * Starts a turn.
+     * @param at - the game time the turn starts at.
+     */
+    private void newTurn(long at) {
+        turnStart = at;
+        timeoutAt = env.config.turnTimeoutMillis > 0 ? at + env.config.turnTimeoutMillis : Long.MAX_VALUE;
+    }
+
+    @Override
+    public boolean hasToken(int player, int slot) {
+        return (tokens[player * words + (slot >>> 6)] & (1L << slot)) != 0;
+    }
+
+    @Override
+    public List<Integer> cards() {
+        List<Integer> cards = new ArrayList<>(slots.length + deck.size());
+        for (int card : slots)
+            if (card >= 0) cards.add(card);
+        return cards;
+    }
+
+    @Override
+    public long cardsVersion() {
+        return cardsVersion;
+    }
+
+    @Override
+    public int tableSize() {
+        return slots.length;
+    }
+
+    @Override
+    public int card(int slot) {
+        return slots[slot];
+    }
+
+    @Override
+    public int slotOf(int card) {
+        for (int slot = 0; slot < slots.length; slot++)
+            if (slots[slot] == card) return slot;
+        return -1;
+    }
+
+    /**
+     * @return - an immutable copy of the board (the same copy until the board changes).
+     */
+    public BoardSnapshot board() {
+        if (snapshot == null) snapshot = new BoardSnapshot(version, cardsVersion, slots.clone(), tokens.clone(), words);
+        return snapshot;
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * @return - the game time (in milliseconds since the game started).
+     */
+    public long clock() {
+        return clock;
+    }
+
+    /**
+     * @return - the game time left until the turn times out (Long.MAX_VALUE if there is no countdown).
+     */
+    public long remainingMillis() {
+        return timeoutAt == Long.MAX_VALUE ? Long.MAX_VALUE : timeoutAt - clock;
+    }
+
+    /**
+     * @return - the game time passed since the turn started.
+     */
+    public long elapsedMillis() {
+        return clock - turnStart;
+    }
+
+    /**
+     * @return - the order the slots are dealt in (not to be changed).
+     */
+    int[] dealingOrder() {
+        return cardsOrder;
+    }
+
+    /**
+     * @return - the cards of the deck (in order).
+     */
+    public int[] deckCards() {
+        return deck.toArray();
+    }
+
+    /**
+     * @return - true iff there is no set left in the deck and on the table.
+     */
+    public boolean isOver() {
+        return over;
+    }
+
+    /**
+     * @param player - the player id.
+     * @return - true iff the presses of the player are ignored now.
+     */
+    public boolean isFrozen(int player) {
+        return clock < frozenUntil[player];
+    }
+
+    /**
+     * @param player - the player id.
+     * @return - the game time the player is frozen until.
+     */
+    public long frozenUntil(int player) {
+        return frozenUntil[player];
+    }
+
+    /**
+     * @param player - the player id.
+     * @return - the random stream of the player (for his strategy).
+     */
+    public SplittableRandom random(int player) {
+        return playerRandoms[player];
+    }
+
+    public int players() {
+        return scores.length;
+    }
+
+    public int score(int player) {
+        return scores[player];
+    }
+
+    public int penalties(int player) {
+        return penalties[player];
+    }
+
+    public int claims(int player) {
+        return claims[player];
+    }
+
+    @Override
+    public int tokenCount(int player) {
+        return tokenCounts[player];
+    }
+
+    public int deckSize() {
+        return deck.size();
+    }
+
+    /**
+     * @return - the number of presses applied (including the ignored ones).
+     */
+    public long presses() {
+        return presses;
+    }
+
+    public int reshuffles() {
+        return reshuffles;
+    }
+
+    public int fullReshuffles() {
+        return fullReshuffles;
+    }
+
+    /**
+     * @return - the number of cards the partial reshuffles replaced.
+     */
+    public int cardsReplaced() {
+        return cardsReplaced;
+    }
+}
@@ -0,0 +1,145 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * This class computes the hints (all the legal sets on the table) on its own thread.
+ * The hints are recomputed only when the cards on the table change (not their tokens) and are published to the
+ * configured sinks, so the dealer and the players never wait for them.
+ */
+public class HintService implements Runnable {
+
+    /**
+     * A destination for the hints of a board version.
+     */
+    public interface Sink {
+        void publish(long version, List<String> hints);
+    }
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The table to compute the hints of.
+     */
+    private final Table table;
+
+    /**
+     * The destinations of the hints.
+     */
+    private final List<Sink> sinks;
+
+    /**
+     * The thread computing the hints.
+     */
+    private volatile Thread thread;
+
+    /**
+     * True iff the service should be terminated.
+     */
+    private volatile boolean terminate;
+
+    /**
+     * The cards version of the board the hints were last computed for (-1 if none, used only by the hint thread).
+     */
+    private long version = -1;
+
+    public HintService(Env env, Table table) {
+        this(env, table, new ArrayList<>());
+        Set<String> names = new LinkedHashSet<>();
+        for (String sink : env.config.hintSinks) {
+            String name = sink.toLowerCase(Locale.ROOT);
+            // printing would tear the frames of a user interface that draws on the console - the hints go to the log
+            names.add(name.equals("console") && env.ui.drawsOnConsole() ? "log" : name);
+        }
+        for (String sink : names) {
+            if (sink.equals("console"))
+                sinks.add((version, hints) -> System.out.println(String.join(System.lineSeparator(), hints)));
+            else if (sink.equals("log"))
+                sinks.add((version, hints) -> hints.forEach(hint -> env.logger.info(hint)));
+            else
+                env.logger.severe("warning: unknown hint sink " + sink);
+        }
+    }
+
+    /**
+     * Constructor for testing.
+     *
+     * @param env   - the game environment object.
+     * @param table - the table to compute the hints of.
+     * @param sinks - the destinations of the hints.
+     */
+    HintService(Env env, Table table, List<Sink> sinks) {
+        this.env = env;
+        this.table = table;
+        this.sinks = sinks;
+    }
+
+    /**
+     * The hint thread starts here (waits for board changes and recomputes the hints).
+     */
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        while (!terminate) {
+            BoardSnapshot board = table.snapshot();
+            if (board.cardsVersion == version) {
+                LockSupport.park(this);
+                continue;
+            }
+            List<String> computed = describe(env, board);
+            version = board.cardsVersion;
+            if (!computed.isEmpty()) for (Sink sink : sinks) sink.publish(board.cardsVersion, computed);
+        }
+        env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * Called when the cards on the table changed. Never blocks.
+     */
+    public void boardChanged() {
+        Thread worker = thread;
+        if (worker != null) LockSupport.unpark(worker);
+    }
+
+    /**
+     * Called when the service should be terminated.
+     */
+    public void terminate() {
+        terminate = true;
+        Thread worker = thread;
+        if (worker != null) {
+            LockSupport.unpark(worker);
+            try {
+                worker.join();
+            } catch (InterruptedException ignored) {}
+        }
+    }
+
+    /**
+     * Describes all the legal sets on a board.
+     * @param env   - the game environment object.
+     * @param board - the board.
+     * @return - a line per legal set with its slots and features.
+     */
+    static List<String> describe(Env env, BoardSnapshot board) {
+        return env.util.findAllSets(board.cards()).stream().map(set -> {
+            StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
+            List<Integer> slots = Arrays.stream(set).mapToObj(board::slotOf).sorted().collect(Collectors.toList());
+            int[][] features = env.util.cardsToFeatures(set);
+            return sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)).toString();
+        }).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,204 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded lock-free ring buffer of the key presses of a single player. There is a single producer (the input
+ * manager, on the event thread) and a single consumer (the player thread): offering a press is O(1) and never blocks
+ * or takes a lock, and the consumer is parked while the ring is empty and unparked by the producer.
+ * Every press carries the time of its key event, so the consumer can drop presses made while the player could not
+ * play (frozen or waiting for the dealer).
+ *
+ * @inv 0 <= tail - head <= capacity
+ */
+public class InputRing {
+
+    /**
+     * What is done with a press offered when the ring is full.
+     */
+    public enum Overflow {
+        /** The new press is dropped. */
+        DROP_NEWEST,
+        /** The oldest press in the ring is dropped. */
+        DROP_OLDEST
+    }
+
+    /**
+     * Which presses are merged.
+     */
+    public enum Coalescing {
+        /** Every press is kept. */
+        NONE,
+        /** A press of the same slot as the previous one within the coalescing window is dropped (key repeats). */
+        REPEATS,
+        /** Two pending presses of the same slot cancel each other (placing and removing a token). */
+        TOGGLES
+    }
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The slot and the time (KeyEvent.getWhen) of each press, by position modulo the capacity.
+     */
+    private final int[] slots;
+    private final long[] times;
+    private final int mask;
+
+    /**
+     * The position of the next press to take (advanced by the consumer, and by the producer when it drops the oldest
+     * press), and the position of the next press to offer (advanced only by the producer).
+     */
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private final Overflow overflow;
+    private final Coalescing coalescing;
+    private final long coalesceMillis;
+
+    /**
+     * The consumer thread (unparked when a press is offered).
+     */
+    private volatile Thread consumer;
+
+    /**
+     * The slot and the time of the last press offered (used only by the producer).
+     */
+    private int lastSlot = -1;
+    private long lastTime;
+
+    /**
+     * @param env      - the game environment object.
+     * @param capacity - the minimal number of pending presses (rounded up to a power of 2).
+     */
+    public InputRing(Env env, int capacity) {
+        this(env, capacity, Config.parsePolicy(env.logger, Overflow.class, env.config.inputOverflowPolicy, Overflow.DROP_OLDEST),
+                Config.parsePolicy(env.logger, Coalescing.class, env.config.inputCoalescing, Coalescing.REPEATS), env.config.inputCoalesceMillis);
+    }
+
+    public InputRing(Env env, int capacity, Overflow overflow, Coalescing coalescing, long coalesceMillis) {
+        this.env = env;
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new int[size];
+        this.times = new long[size];
+        this.mask = size - 1;
+        this.overflow = overflow;
+        this.coalescing = coalescing;
+        this.coalesceMillis = coalesceMillis;
+    }
+
+    /**
+     * @return - the number of presses the ring can hold.
+     */
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Sets the thread that takes the presses.
+     * @param thread - the consumer thread.
+     */
+    public void setConsumer(Thread thread) {
+        consumer = thread;
+    }
+
+    /**
+     * Offers a press. Called only by the producer; never blocks.
+     * @param slot - the slot pressed.
+     * @param time - the time of the key event.
+     * @return - true iff the press was added to the ring.
+     */
+    public boolean offer(int slot, long time) {
+        if (coalescing == Coalescing.REPEATS && slot == lastSlot && time - lastTime < coalesceMillis) {
+            lastTime = time;
+            env.metrics.increment("input.coalesced");
+            return false;
+        }
+        lastSlot = slot;
+        lastTime = time;
+
+        long t = tail.get();
+        if (t - head.get() == slots.length) {
+            env.metrics.increment("input.dropped");
+            if (overflow == Overflow.DROP_NEWEST) return false;
+            // if the consumer took the oldest press meanwhile there is room anyway
+            head.compareAndSet(t - slots.length, t - slots.length + 1);
+        }
+        slots[(int) t & mask] = slot;
+        times[(int) t & mask] = time;
+        tail.lazySet(t + 1);
+
+        Thread thread = consumer;
+        if (thread != null) LockSupport.unpark(thread);
+        return true;
+    }
+
+    /**
+     * Takes the pending presses without blocking. Called only by the consumer.
+     * @param slotsOut - the array to copy the slots of the presses to.
+     * @param timesOut - the array to copy the times of the presses to.
+     * @return - the number of presses taken (at most the length of the arrays).
+     */
+    public int drain(int[] slotsOut, long[] timesOut) {
+        int count = 0;
+        while (count < slotsOut.length) {
+            long h = head.get();
+            if (h == tail.get()) break;
+            int slot = slots[(int) h & mask];
+            long time = times[(int) h & mask];
+            // fails iff the producer dropped this press (and may have reused its position) - then retry
+            if (!head.compareAndSet(h, h + 1)) continue;
+            slotsOut[count] = slot;
+            timesOut[count] = time;
+            count++;
+        }
+        if (coalescing == Coalescing.TOGGLES) count = cancelToggles(slotsOut, timesOut, count);
+        return count;
+    }
+
+    /**
+     * Takes the pending presses, waiting while there are none. Called only by the consumer.
+     * @param slotsOut - the array to copy the slots of the presses to.
+     * @param timesOut - the array to copy the times of the presses to.
+     * @return - the number of presses taken, or 0 if the consumer was interrupted.
+     */
+    public int take(int[] slotsOut, long[] timesOut) {
+        int count;
+        while ((count = drain(slotsOut, timesOut)) == 0) {
+            if (Thread.interrupted()) return 0;
+            LockSupport.park(this);
+        }
+        return count;
+    }
+
+    /**
+     * Removes the pairs of presses of the same slot (keeping the order of the rest).
+     * @return - the number of presses left.
+     */
+    private int cancelToggles(int[] slotsOut, long[] timesOut, int count) {
+        boolean[] cancelled = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            if (cancelled[i]) continue;
+            for (int j = i + 1; j < count; j++)
+                if (!cancelled[j] && slotsOut[j] == slotsOut[i]) {
+                    cancelled[i] = cancelled[j] = true;
+                    env.metrics.add("input.coalesced", 2);
+                    break;
+                }
+        }
+        int left = 0;
+        for (int i = 0; i < count; i++)
+            if (!cancelled[i]) {
+                slotsOut[left] = slotsOut[i];
+                timesOut[left] = timesOut[i];
+                left++;
+            }
+        return left;
+    }
+}
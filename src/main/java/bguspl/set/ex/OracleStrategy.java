@@ -0,0 +1,74 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * A strategy that always knows the legal sets on the board. It picks the set that shares the most slots with the
+ * player's tokens, removes the tokens that are not part of it and then places the missing ones.
+ * When there is no legal set on the board it passes. The sets are searched again only when the cards change.
+ */
+public class OracleStrategy implements Strategy {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The random generator used to break ties between sets.
+     */
+    private final SplittableRandom random;
+
+    /**
+     * The legal sets on the board, and the cards version of the board they were found on (-1 if none).
+     */
+    private List<int[]> sets;
+    private long setsVersion = -1;
+
+    public OracleStrategy(Env env, SplittableRandom random) {
+        this.env = env;
+        this.random = random;
+    }
+
+    @Override
+    public int nextPress(Board board, int player) {
+        if (board.cardsVersion() != setsVersion) {
+            sets = env.util.findAllSets(board.cards());
+            setsVersion = board.cardsVersion();
+        }
+        if (sets.isEmpty()) return -1;
+
+        int[] target = null;
+        int bestOverlap = -1;
+        int offset = random.nextInt(sets.size());
+        for (int i = 0; i < sets.size(); i++) {
+            int[] set = sets.get((offset + i) % sets.size());
+            int overlap = 0;
+            for (int card : set)
+                if (board.hasToken(player, board.slotOf(card))) overlap++;
+            if (overlap > bestOverlap) {
+                target = set;
+                bestOverlap = overlap;
+            }
+        }
+
+        // remove a token that is not part of the target set
+        for (int slot = 0; slot < board.tableSize(); slot++)
+            if (board.hasToken(player, slot) && !contains(target, board.card(slot))) return slot;
+        // place a missing token
+        for (int card : target) {
+            int slot = board.slotOf(card);
+            if (!board.hasToken(player, slot)) return slot;
+        }
+        return -1;
+    }
+
+    private static boolean contains(int[] set, int card) {
+        for (int c : set)
+            if (c == card) return true;
+        return false;
+    }
+}
@@ -1,11 +1,6 @@
 package bguspl.set.ex;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
-import java.util.Random;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.stream.Collectors;
 import bguspl.set.Env;
 
 
@@ -61,11 +56,32 @@ public class Player implements Runnable {
      */
     private int score;
 
+    /**
+     * The number of penalties the player got.
+     */
+    private int penalties;
+
     /*
      * This queue contains the keys to be pressed
      */
     private ArrayBlockingQueue<Integer> incomingActions;
 
+    /*
+     * The key presses of a human player, enqueued by the input manager (null for a computer player)
+     */
+    private final InputRing input;
+
+    /*
+     * The slots and the times of the key presses taken from the input ring
+     */
+    private final int[] pressSlots;
+    private final long[] pressTimes;
+
+    /*
+     * Key presses made before this time are dropped - the player could not play when they were made
+     */
+    private long acceptInputFrom;
+
     //flags indicating:
     // Point/Penalty
     public boolean point;
@@ -73,6 +89,13 @@ public class Player implements Runnable {
     // If the board is being reorgenized 
     public boolean removeAllCardsFromTable;
 
+    /*
+     * The time the current freeze of the player ends at, and the length of the freeze of the claim the dealer
+     * answered last (by the rules of the game state)
+     */
+    private volatile long frozenUntil;
+    private volatile long freezeMillis;
+
     /**
      * The class constructor.
      *
@@ -89,6 +112,9 @@ public class Player implements Runnable {
         this.id = id;
         this.human = human;
         this.incomingActions = new ArrayBlockingQueue<Integer>(env.config.featureSize);
+        this.input = human ? new InputRing(env, env.config.inputBufferSize) : null;
+        this.pressSlots = human ? new int[input.capacity()] : null;
+        this.pressTimes = human ? new long[input.capacity()] : null;
         this.point = false;
         this.penalty = false;
         removeAllCardsFromTable = true;
@@ -101,16 +127,36 @@ public class Player implements Runnable {
     public void run() {
         playerThread = Thread.currentThread();
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        ThreadAccounting.Account account = dealer.accounting().register(ThreadAccounting.Phase.RUNNING);
         if (!human) createArtificialIntelligence(); // Generate presskeys for ai
+        else input.setConsumer(playerThread);
         // Run loop
 
         while (!terminate) {
             // Press for ai
             if(!human){
                 try {
-                    Thread.sleep(1000);
+                    Thread.sleep(env.config.computerPressDelayMillis(id));
                 } catch (InterruptedException ignored) {}
-                if(!incomingActions.isEmpty()) keyPressed(incomingActions.remove());      
+                if(!incomingActions.isEmpty() && !isFrozen()) keyPressed(incomingActions.remove());
+                // Notify the ai to generate the next keypress
+                synchronized(aiThread) { aiThread.notify(); }
+            }
+            // Press for human - wait for the presses enqueued by the input manager
+            else {
+                int count = input.take(pressSlots, pressTimes);
+                for(int i = 0; i < count; i++) {
+                    long now = System.currentTimeMillis();
+                    if(now - pressTimes[i] > env.metrics.get("input.maxLatencyMillis"))
+                        env.metrics.set("input.maxLatencyMillis", now - pressTimes[i]);
+                    if(pressTimes[i] < acceptInputFrom) {
+                        env.metrics.increment("input.stale");
+                        continue;
+                    }
+                    env.metrics.increment("input.presses");
+                    env.logger.info("slot " + pressSlots[i] + " was pressed by player " + (id + 1));
+                    keyPressed(pressSlots[i]);
+                }
             }
             // For tests
             /*if(id==0){
@@ -121,50 +167,61 @@ public class Player implements Runnable {
             } */  
 
             // Wait for dealer when (tokens.size == featureSize)
+            boolean waited = false;
             synchronized(table.tokens.get(id)) {
                 while (table.tokens.get(id).size() == env.config.featureSize || removeAllCardsFromTable) { 
+                    waited = true;
+                    dealer.watchdog().waiting(id);
                     try {
                         table.tokens.get(id).wait();
                     } catch (InterruptedException ignored) {}
                 }
             }
 
+            dealer.watchdog().resumed(id);
+            // The presses made while waiting for the dealer are dropped
+            if(waited) acceptInputFrom = Math.max(acceptInputFrom, System.currentTimeMillis());
+
             // Award/penalize the player
             if(point) point();
             if(penalty) penalty();
 
         }
         if (!human) try { aiThread.join(); } catch (InterruptedException ignored) {}
+        account.close();
         env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
     }
 
     /**
-     * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
-     * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly asks the
+     * player's strategy for the next key press. The next press is generated only after the previous one was consumed,
+     * so the strategy always sees the board after it; meanwhile the thread waits.
      * @PRE: (!human)
      */
     private void createArtificialIntelligence() {
+        Strategy strategy = Strategy.create(env.config.computerStrategy(id), env, dealer.random(id));
         aiThread = new Thread(() -> {
             env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
-            Random rand = new Random();
-            Integer nextPress;
-            
+            ThreadAccounting.Account account = dealer.accounting().register(ThreadAccounting.Phase.RUNNING);
+
             // Run loop
             while (!terminate) {
-                //if the computer agent has genereated 'FeatureSize' key-presses we tell the thread to wait
                 synchronized(aiThread){
-                    if(incomingActions.size() < env.config.featureSize ){
-                        //generating random keypress for the computeragenet
-                        nextPress = rand.nextInt(env.config.rows * env.config.columns);
-                        incomingActions.add(nextPress);  
-                    } else {
-                        try{ 
-                            aiThread.wait();
+                    if(incomingActions.isEmpty()){
+                        //generating the next keypress for the computer agent (-1 if it passes)
+                        int nextPress = strategy.nextPress(table.snapshot(), id);
+                        if(nextPress >= 0){
+                            incomingActions.add(nextPress);
+                            continue;
                         }
-                        catch (InterruptedException ignored) {}
-                    } 
+                    }
+                    try{
+                        aiThread.wait();
+                    }
+                    catch (InterruptedException ignored) {}
                 }
             }
+            account.close();
             env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
         }, "computer-" + id);
         aiThread.start();
@@ -200,25 +257,46 @@ public class Player implements Runnable {
     }
 
     /**
-     * This method is called when a key is pressed.
+     * Called by the input manager (on the event thread) when a key of a human player is pressed. Only enqueues the
+     * press for the player thread - never blocks.
+     *
+     * @param slot - the slot corresponding to the key pressed.
+     * @param time - the time of the key event.
+     */
+    public void enqueueKeyPress(int slot, long time) {
+        if(input != null) input.offer(slot, time);
+    }
+
+    /**
+     * This method is called when a key is pressed. The press passes the admission control of the dealer first (and
+     * the player may wait there, if input over the limits is deferred).
      * 
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot)  {
+        if(!canPress()) return;
+        AdmissionControl admission = dealer.admission();
+        if(!admission.admitPress(id)) return;
+        boolean claims = !table.isPlaced(id, slot) && table.tokens.get(id).size() == env.config.featureSize - 1;
+        if(claims && !admission.admitClaim()) return;
+
         // Don't allow more then feature size tokens &&  don't allow the input manager to access tokenPress
-        if(table.tokens.get(id).size() != env.config.featureSize && !point && !penalty && !removeAllCardsFromTable){
+        // (checked again - the press may have been deferred)
+        if(canPress()){
             if(table.isPlaced(id, slot)) {
                 table.removeToken(id, slot);
             }
             else {
                 table.placeToken(id, slot);
             }
-            // Notify the ai to continue generate keypresses 
-            if(!human) synchronized(aiThread) { aiThread.notify();}
         }
 
     }
 
+    private boolean canPress() {
+        return table.tokens.get(id).size() != env.config.featureSize && !point && !penalty && !removeAllCardsFromTable && !isFrozen();
+    }
+
     /**
      * Award a point to a player and perform other related actions.
      *
@@ -227,7 +305,7 @@ public class Player implements Runnable {
      */
     public void point() {
         env.ui.setScore(id, ++score);
-        setClockFreeze(true);
+        setClockFreeze();
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
         point = false;
         //dealer.resetTime();
@@ -237,7 +315,8 @@ public class Player implements Runnable {
      * Penalize a player and perform other related actions.
      */
     public void penalty() {
-            setClockFreeze(false);
+            penalties++;
+            setClockFreeze();
             penalty = false;
     }
 
@@ -245,22 +324,41 @@ public class Player implements Runnable {
         return score;
     }
 
-    public void setCheckSet(boolean result) {
+    public int penalties() {
+        return penalties;
+    }
+
+    /**
+     * Restores the score of a saved game. Called before the player thread starts.
+     * @param score     - the score of the player.
+     * @param penalties - the number of penalties the player got.
+     */
+    public void restore(int score, int penalties) {
+        this.score = score;
+        this.penalties = penalties;
+        env.ui.setScore(id, score);
+    }
+
+    /**
+     * The dealer's answer to the claim of the player.
+     * @param result       - true iff the claim was a legal set.
+     * @param freezeMillis - how long the player is frozen for.
+     */
+    public void setCheckSet(boolean result, long freezeMillis) {
+        this.freezeMillis = freezeMillis;
         if(result) point = true;
         else penalty = true;
     }
     
-    // Incharge of freezing the player for penalty/score
-    public void setClockFreeze (boolean success) {
-        long counter = success ? env.config.pointFreezeMillis : env.config.penaltyFreezeMillis;
-        while(counter > 0) {
-            env.ui.setFreeze(id,counter);
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {}
-            counter -= 1000;
-        }
-        env.ui.setFreeze(id,counter);
+    // Incharge of freezing the player for penalty/score - the dealer's freeze scheduler updates the display
+    public void setClockFreeze() {
+        frozenUntil = System.currentTimeMillis() + freezeMillis;
+        acceptInputFrom = Math.max(acceptInputFrom, frozenUntil);
+        dealer.freeze(id, frozenUntil);
+    }
+
+    public boolean isFrozen() {
+        return System.currentTimeMillis() < frozenUntil;
     }
 
     public void setRemoveAllCardFromTable(boolean set) {
@@ -268,11 +366,9 @@ public class Player implements Runnable {
     }
    
     public void automatePresses() {
-        List<Integer> deck = Arrays.stream(table.slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, 1).forEach(set -> {
-            keyPressed(table.cardToSlot[set[0]]);
-            keyPressed(table.cardToSlot[set[1]]);
-            keyPressed(table.cardToSlot[set[2]]);
+        BoardSnapshot board = table.snapshot();
+        env.util.findSets(board.cards(), 1).forEach(set -> {
+            for(int card : set) keyPressed(board.slotOf(card));
         });
     }
 }
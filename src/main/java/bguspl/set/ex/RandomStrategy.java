@@ -0,0 +1,23 @@
+package bguspl.set.ex;
+
+import java.util.SplittableRandom;
+
+/**
+ * A strategy pressing random slots (the original computer player).
+ */
+public class RandomStrategy implements Strategy {
+
+    /**
+     * The random generator of the presses.
+     */
+    private final SplittableRandom random;
+
+    public RandomStrategy(SplittableRandom random) {
+        this.random = random;
+    }
+
+    @Override
+    public int nextPress(Board board, int player) {
+        return random.nextInt(board.tableSize());
+    }
+}
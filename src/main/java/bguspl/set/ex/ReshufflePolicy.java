@@ -0,0 +1,11 @@
+package bguspl.set.ex;
+
+/**
+ * How the table is reshuffled when the turn times out (or has no set).
+ */
+public enum ReshufflePolicy {
+    /** All the cards are returned to the deck and a new table is dealt. */
+    FULL,
+    /** Only as many cards as needed for a legal set are replaced - the rest stay, with their tokens. */
+    PARTIAL
+}
@@ -0,0 +1,61 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+/**
+ * Plays a game of computer players on the game core (GameState) with a simulated clock: every player presses a key
+ * every computerPressDelayMillis of game time - the slot his strategy picks, unless he is frozen - and the clock
+ * jumps straight to the next press. A game takes only the time of its moves, so many games can be played for
+ * training and comparing strategies (see Tournament, Engine=simulation).
+ */
+public class Simulation {
+
+    /**
+     * The longest game played when there is no time limit (in game time) - random players may never end a game.
+     */
+    private static final long MAX_GAME_MILLIS = 24 * 3_600_000L;
+
+    private Simulation() {}
+
+    /**
+     * Plays a game until it is over or until the time limit.
+     * @param env         - the game environment object.
+     * @param seed        - the seed of the game.
+     * @param limitMillis - the longest game time to play (0 for no limit).
+     * @return - the state of the game at its end.
+     * @PRE: env.config.humanPlayers == 0
+     */
+    public static GameState play(Env env, long seed, long limitMillis) {
+        GameState state = new GameState(env, seed);
+        int players = state.players();
+        Strategy[] strategies = new Strategy[players];
+        long[] delays = new long[players];
+        long[] next = new long[players];
+        for (int i = 0; i < players; i++) {
+            strategies[i] = Strategy.create(env.config.computerStrategy(i), env, state.random(i));
+            delays[i] = Math.max(1, env.config.computerPressDelayMillis(i));
+            next[i] = delays[i];
+        }
+
+        long limit = limitMillis > 0 ? limitMillis : MAX_GAME_MILLIS;
+        while (!state.isOver()) {
+            int player = 0;
+            for (int i = 1; i < players; i++)
+                if (next[i] < next[player]) player = i;
+            if (next[player] > limit) break;
+            state.tick(next[player] - state.clock());
+            if (state.isOver()) break;
+
+            if (state.isFrozen(player)) {
+                // the presses made while the player is frozen are skipped, as by the player thread
+                long frozen = state.frozenUntil(player) - next[player];
+                next[player] += (frozen + delays[player] - 1) / delays[player] * delays[player];
+                continue;
+            }
+            int slot = strategies[player].nextPress(state, player);
+            if (slot >= 0) state.apply(player, slot);
+            next[player] += delays[player];
+        }
+        return state;
+    }
+}
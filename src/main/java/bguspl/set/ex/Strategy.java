@@ -0,0 +1,32 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.SplittableRandom;
+
+/**
+ * This interface decides the key presses of a computer player.
+ */
+public interface Strategy {
+
+    /**
+     * Decides the next key press of a player.
+     * @param board  - the current board.
+     * @param player - the id of the player.
+     * @return - the slot to press, or -1 to pass this turn.
+     */
+    int nextPress(Board board, int player);
+
+    /**
+     * Creates a strategy by its name.
+     * @param name   - the name of the strategy (random or oracle).
+     * @param env    - the game environment object.
+     * @param random - the random generator of the strategy.
+     * @return - the strategy (random if the name is unknown).
+     */
+    static Strategy create(String name, Env env, SplittableRandom random) {
+        if (name.equalsIgnoreCase("oracle")) return new OracleStrategy(env, random);
+        if (!name.equalsIgnoreCase("random")) env.logger.severe("warning: unknown computer strategy " + name + " using random.");
+        return new RandomStrategy(random);
+    }
+}
@@ -2,12 +2,9 @@ package bguspl.set.ex;
 
 import bguspl.set.Env;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
 import java.util.Vector;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class contains the data that is visible to the player.
@@ -40,9 +37,24 @@ public class Table {
     final Vector<Vector<Integer>> tokens;
 
     /*
-     * A list of players who are waiting for there set to be checked
+     * The claims of players who are waiting for there set to be checked
      */
-    final ArrayBlockingQueue<Integer> waitingForDealer;
+    final ClaimQueue waitingForDealer;
+
+    /*
+     * The generation of each slot - bumped whenever a card is placed in or removed from the slot
+     */
+    private final AtomicIntegerArray slotGenerations;
+
+    /*
+     * The version of the board - bumped whenever a card is placed on or removed from the table
+     */
+    private final AtomicLong version;
+
+    /*
+     * The latest immutable copy of the board - replaced on every change, so readers never need to lock the table
+     */
+    private volatile BoardSnapshot snapshot;
     
     /**
      * Constructor for testing.
@@ -59,7 +71,13 @@ public class Table {
         this.cardToSlot = cardToSlot;
         this.tokens = new Vector<Vector<Integer>>(env.config.players);
         initializeTokens();
-        this.waitingForDealer = new ArrayBlockingQueue<Integer>(env.config.players);
+        this.waitingForDealer = new ClaimQueue(env.config.players);
+        this.slotGenerations = new AtomicIntegerArray(slotToCard.length);
+        this.version = new AtomicLong();
+        BoardSnapshot board = BoardSnapshot.empty(slotToCard.length, env.config.players);
+        for (int slot = 0; slot < slotToCard.length; slot++)
+            if (slotToCard[slot] != null) board = board.withCard(0, slot, slotToCard[slot]);
+        this.snapshot = board;
     }
 
     private void initializeTokens (){
@@ -77,16 +95,25 @@ public class Table {
     }
 
     /**
-     * This method prints all possible legal sets of cards that are currently on the table.
+     * @return - the version of the board (changes whenever a card is placed or removed).
      */
-    public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
-            StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
-            int[][] features = env.util.cardsToFeatures(set);
-            System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
-        });
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * @return - the latest immutable copy of the board (never blocks).
+     */
+    public BoardSnapshot snapshot() {
+        return snapshot;
+    }
+
+    private synchronized void publishCard(int slot, int card) {
+        snapshot = snapshot.withCard(version.get(), slot, card);
+    }
+
+    private synchronized void publishToken(int player, int slot, boolean placed) {
+        snapshot = snapshot.withToken(player, slot, placed);
     }
 
     /**
@@ -117,6 +144,9 @@ public class Table {
             if(slotToCard[slot] == null){
                 cardToSlot[card] = slot;
                 slotToCard[slot] = card;
+                slotGenerations.incrementAndGet(slot);
+                version.incrementAndGet();
+                publishCard(slot, card);
                 env.ui.placeCard(card, slot);
             }
     }
@@ -131,17 +161,35 @@ public class Table {
             try {
                 Thread.sleep(env.config.tableDelayMillis);
             } catch (InterruptedException ignored) {}
+            clearSlot(slot);
+    }
+
+    /**
+     * Removes the cards of several grid slots from the table at once (with a single delay).
+     * @param slots - the slots from which to remove the cards.
+     * @PRE: none
+     * @POST: for each slot in slots, slotToCard[slot] == null;
+     */
+    public synchronized void removeCards(int[] slots) {
+            try {
+                Thread.sleep(env.config.tableDelayMillis);
+            } catch (InterruptedException ignored) {}
+            for(int slot : slots) clearSlot(slot);
+    }
+
+    private void clearSlot(int slot) {
             if(slotToCard[slot] != null){
                 for(int i =0; i<env.config.players; i++) removeToken(i, slot);
                 int card = slotToCard[slot];
                 cardToSlot[card] = null;
                 slotToCard[slot] = null;
+                slotGenerations.incrementAndGet(slot);
+                version.incrementAndGet();
+                publishCard(slot, -1);
                 env.ui.removeTokens(slot);
                 env.ui.removeCard(slot);
             }
-        
     }
-    
 
     /**
      * Places a player's token on a grid slot.
@@ -153,10 +201,10 @@ public class Table {
     public synchronized void placeToken(int player, int slot) {
         if(slotToCard[slot] != null) {
             tokens.get(player).add(slot);
+            publishToken(player, slot, true);
             env.ui.placeToken(player, slot);
             if(tokens.get(player).size() == env.config.featureSize) {
-                waitingForDealer.add(player);
-                synchronized(waitingForDealer){waitingForDealer.notify();}
+                waitingForDealer.add(createClaim(player));
             }
         }
     }
@@ -172,6 +220,7 @@ public class Table {
     public synchronized boolean removeToken(int player, int slot) {
         if(tokens.get(player).contains(slot)) {
             tokens.get(player).remove((Integer)slot);
+            publishToken(player, slot, false);
             env.ui.removeToken(player, slot);
             return true;
         }
@@ -179,10 +228,39 @@ public class Table {
         
     }
 
+    /**
+     * Stamps the player's current tokens with the generations of their slots.
+     * @param player - the player who completed a set of tokens.
+     * @return - the claim to be checked by the dealer.
+     */
+    private Claim createClaim(int player) {
+        int[] slots = new int[env.config.featureSize];
+        int[] generations = new int[slots.length];
+        for(int i = 0; i < slots.length; i++) {
+            slots[i] = tokens.get(player).get(i);
+            generations[i] = slotGenerations.get(slots[i]);
+        }
+        return new Claim(player, slots, generations, System.nanoTime());
+    }
+
+    /**
+     * Checks if a card of the claim was removed or replaced since the claim was made.
+     * @param claim - the claim to check.
+     * @return - true iff the generation of one of the claim's slots has changed.
+     */
+    boolean isStale(Claim claim) {
+        for(int i = 0; i < claim.slots.length; i++)
+            if(slotGenerations.get(claim.slots[i]) != claim.generations[i]) return true;
+        return false;
+    }
+
     public boolean isPlaced(int player, int slot){
         return tokens.get(player).contains(slot);
     }
 
+    /**
+     * Cancels all the claims waiting for the dealer. Called by the dealer.
+     */
     public void clearWaitingQueue() {
         waitingForDealer.clear();
     }
@@ -0,0 +1,258 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class accounts the CPU time and the heap allocations of the game threads (dealer, players and AI threads).
+ * A sampler thread reads the counters of every registered thread periodically and charges the difference to the
+ * phase the thread is in; a thread that marks its phases (the dealer) is also charged on every phase change, so its
+ * cost is split exactly between the phases. The totals are published as metrics on every sample and reported to the
+ * log when the game ends.
+ */
+public class ThreadAccounting implements Runnable {
+
+    /**
+     * The phases the cost of a thread is attributed to (END_CHECK - checking whether the game is over).
+     */
+    public enum Phase {
+        RUNNING, DEALING, CLAIM_VERIFICATION, RESHUFFLE, END_CHECK, IDLE_POLLING;
+
+        final String metric = name().toLowerCase(Locale.ROOT).replace('_', '.');
+    }
+
+    /**
+     * The cost account of a single thread.
+     */
+    public class Account {
+        private final Thread thread;
+        private final String name;
+        private volatile Phase phase;
+        private long lastCpu;
+        private long lastAllocated;
+        private final long[] cpu = new long[Phase.values().length];
+        private final long[] allocated = new long[Phase.values().length];
+
+        private Account(Thread thread, Phase phase) {
+            this.thread = thread;
+            this.name = thread.getName();
+            this.phase = phase;
+            lastCpu = cpuTime(thread);
+            lastAllocated = allocatedBytes(thread);
+        }
+
+        /**
+         * Marks the start of a phase of the thread (the cost until now is charged to the previous phase).
+         * Called by the thread of the account; calls from other threads are ignored.
+         * @param next - the phase the thread enters.
+         */
+        public void enter(Phase next) {
+            if (!enabled || phase == next || Thread.currentThread() != thread) return;
+            synchronized (this) {
+                charge();
+                phase = next;
+            }
+        }
+
+        /**
+         * Charges the last cost of the thread. Called by the thread when it ends (its counters cannot be read after).
+         */
+        public void close() {
+            if (enabled) synchronized (this) { charge(); }
+        }
+
+        /**
+         * Charges the cost of the thread since the last charge to its current phase.
+         * @PRE: Thread.holdsLock(this)
+         */
+        private void charge() {
+            long cpuNow = cpuTime(thread);
+            long allocatedNow = allocatedBytes(thread);
+            if (cpuNow >= 0) {
+                cpu[phase.ordinal()] += cpuNow - lastCpu;
+                lastCpu = cpuNow;
+            }
+            if (allocatedNow >= 0) {
+                allocated[phase.ordinal()] += allocatedNow - lastAllocated;
+                lastAllocated = allocatedNow;
+            }
+        }
+
+        /**
+         * @param p - a phase.
+         * @return - the CPU time charged to the phase so far (in nanoseconds).
+         */
+        synchronized long cpuNanosIn(Phase p) {
+            return cpu[p.ordinal()];
+        }
+
+        /**
+         * @param p - a phase.
+         * @return - the bytes allocated in the phase so far (as charged).
+         */
+        synchronized long allocatedBytesIn(Phase p) {
+            return allocated[p.ordinal()];
+        }
+
+        /**
+         * Publishes the totals of the account as metrics.
+         * @PRE: Thread.holdsLock(this)
+         */
+        private void publish() {
+            long cpuTotal = 0, allocatedTotal = 0;
+            for (Phase p : Phase.values()) {
+                cpuTotal += cpu[p.ordinal()];
+                allocatedTotal += allocated[p.ordinal()];
+                if (cpu[p.ordinal()] > 0) env.metrics.set("threads." + name + "." + p.metric + ".cpuMicros", cpu[p.ordinal()] / 1000);
+                if (allocated[p.ordinal()] > 0) env.metrics.set("threads." + name + "." + p.metric + ".allocatedBytes", allocated[p.ordinal()]);
+            }
+            env.metrics.set("threads." + name + ".cpuMicros", cpuTotal / 1000);
+            env.metrics.set("threads." + name + ".allocatedBytes", allocatedTotal);
+        }
+
+        /**
+         * @return - a line describing the cost of the thread (per phase).
+         */
+        private synchronized String describe() {
+            long cpuTotal = 0, allocatedTotal = 0;
+            StringBuilder phases = new StringBuilder();
+            for (Phase p : Phase.values()) {
+                cpuTotal += cpu[p.ordinal()];
+                allocatedTotal += allocated[p.ordinal()];
+                if (cpu[p.ordinal()] > 0 || allocated[p.ordinal()] > 0)
+                    phases.append(phases.length() == 0 ? " (" : ", ").append(String.format("%s %.1f ms / %.2f MB",
+                            p.metric, cpu[p.ordinal()] / 1e6, allocated[p.ordinal()] / 1048576.0));
+            }
+            if (phases.length() > 0) phases.append(")");
+            return String.format("thread accounting: %s cpu %.1f ms, allocated %.2f MB%s", name, cpuTotal / 1e6,
+                    allocatedTotal / 1048576.0, phases);
+        }
+    }
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The standard thread management interface, and its extension with the allocation counters (null if the JVM
+     * does not support them).
+     */
+    private final ThreadMXBean threads;
+    private final com.sun.management.ThreadMXBean allocations;
+
+    /**
+     * True iff the accounting is on (configured and supported by the JVM).
+     */
+    private final boolean enabled;
+
+    /**
+     * The accounts of the registered threads (guarded by this).
+     */
+    private final List<Account> accounts = new ArrayList<>();
+
+    /**
+     * The sampler thread.
+     */
+    private volatile Thread thread;
+
+    /**
+     * True iff the accounting should be terminated.
+     */
+    private volatile boolean terminate;
+
+    public ThreadAccounting(Env env) {
+        this.env = env;
+        threads = ManagementFactory.getThreadMXBean();
+        allocations = threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        enabled = env.config.threadAccountingMillis > 0 && threads.isThreadCpuTimeSupported();
+        if (enabled) {
+            if (!threads.isThreadCpuTimeEnabled()) threads.setThreadCpuTimeEnabled(true);
+            if (allocations != null && !allocations.isThreadAllocatedMemoryEnabled()) allocations.setThreadAllocatedMemoryEnabled(true);
+        } else if (env.config.threadAccountingMillis > 0)
+            env.logger.severe("warning: thread cpu time is not supported, thread accounting is off.");
+    }
+
+    /**
+     * The sampler thread starts here (charges all the registered threads periodically).
+     */
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        while (!terminate) {
+            try {
+                Thread.sleep(env.config.threadAccountingMillis);
+            } catch (InterruptedException ignored) {}
+            sample();
+        }
+        env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * @return - true iff the accounting is on.
+     */
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Registers the current thread.
+     * @param phase - the phase the thread starts in.
+     * @return - the account of the thread.
+     */
+    public Account register(Phase phase) {
+        Account account = new Account(Thread.currentThread(), phase);
+        if (enabled) synchronized (this) { accounts.add(account); }
+        return account;
+    }
+
+    /**
+     * Charges all the registered threads and publishes their totals.
+     */
+    private synchronized void sample() {
+        for (Account account : accounts)
+            synchronized (account) {
+                if (account.thread.isAlive()) account.charge();
+                account.publish();
+            }
+    }
+
+    /**
+     * Called when the game ends - stops the sampler and reports the cost of every thread to the log.
+     */
+    public void terminate() {
+        Thread sampler = thread;
+        synchronized (this) {
+            if (terminate) return;
+            terminate = true;
+        }
+        if (sampler != null) {
+            sampler.interrupt();
+            try {
+                sampler.join();
+            } catch (InterruptedException ignored) {}
+        }
+        if (!enabled) return;
+        sample();
+        synchronized (this) {
+            for (Account account : accounts) env.logger.info(account.describe());
+        }
+    }
+
+    private long cpuTime(Thread thread) {
+        if (!enabled) return -1;
+        return thread == Thread.currentThread() ? threads.getCurrentThreadCpuTime() : threads.getThreadCpuTime(thread.getId());
+    }
+
+    private long allocatedBytes(Thread thread) {
+        return enabled && allocations != null ? allocations.getThreadAllocatedBytes(thread.getId()) : -1;
+    }
+}
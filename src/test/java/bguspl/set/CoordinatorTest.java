@@ -0,0 +1,143 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoordinatorTest {
+
+    @TempDir
+    Path directory;
+
+    private static GameResult result(int game) {
+        return new GameResult(game, 1000L + game, 10L * game, game % 2 == 0, new String[]{"A", "B"},
+                new int[]{game, 1}, new int[]{0, game}, new int[]{game, 2}, new long[]{7L * game, 3});
+    }
+
+    private Path shard(String name, boolean complete, int... games) throws IOException {
+        Path file = directory.resolve(name);
+        try (OutputStream stream = Files.newOutputStream(file); DataOutputStream out = new DataOutputStream(stream)) {
+            for (int game : games) result(game).writeTo(out);
+            if (complete) GameResult.writeEnd(out);
+        }
+        return file;
+    }
+
+    private Tournament tournament() {
+        Properties settings = new Properties();
+        settings.setProperty("Roster", "A:oracle, B:random");
+        settings.setProperty("ReportEvery", "0");
+        settings.setProperty("Results", directory.resolve("results.csv").toString());
+        settings.setProperty("Ratings", "");
+        return new Tournament(Logger.getAnonymousLogger(), settings);
+    }
+
+    private Coordinator coordinator() {
+        Properties settings = new Properties();
+        settings.setProperty("Games", "8");
+        settings.setProperty("Workers", "3");
+        return new Coordinator(Logger.getAnonymousLogger(), settings);
+    }
+
+    /**
+     * @return - the games of the results file, in the order they were written.
+     */
+    private int[] games() throws IOException {
+        List<String> lines = Files.readAllLines(directory.resolve("results.csv"), StandardCharsets.UTF_8);
+        // a line per player per game
+        return lines.stream().skip(1).filter(line -> line.split(",")[4].equals("0"))
+                .mapToInt(line -> Integer.parseInt(line.split(",")[0])).toArray();
+    }
+
+    @Test
+    void writeTo_ReadFromRoundTrip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        result(3).writeTo(out);
+        result(4).writeTo(out);
+        GameResult.writeEnd(out);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int game = 3; game <= 4; game++) {
+            GameResult expected = result(game);
+            GameResult actual = GameResult.readFrom(in);
+            assertEquals(expected.game, actual.game);
+            assertEquals(expected.seed, actual.seed);
+            assertEquals(expected.durationMillis, actual.durationMillis);
+            assertEquals(expected.timedOut, actual.timedOut);
+            assertArrayEquals(expected.names, actual.names);
+            assertArrayEquals(expected.scores, actual.scores);
+            assertArrayEquals(expected.penalties, actual.penalties);
+            assertArrayEquals(expected.claims, actual.claims);
+            assertArrayEquals(expected.claimMicros, actual.claimMicros);
+        }
+        assertNull(GameResult.readFrom(in));
+    }
+
+    @Test
+    void merge_ResultsAreMergedByGame() throws IOException {
+        Path[] shards = {shard("0", true, 0, 2, 5), shard("1", true, 1, 3, 4, 7), shard("2", true, 6)};
+        boolean[] failed = new boolean[shards.length];
+
+        assertEquals(8, coordinator().merge(tournament(), shards, failed));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7}, games());
+        assertArrayEquals(new boolean[shards.length], failed);
+    }
+
+    @Test
+    void merge_IncompleteAndMissingShardsFail() throws IOException {
+        Path[] shards = {shard("0", true, 0, 1, 2), shard("1", false, 3, 4), directory.resolve("missing")};
+        boolean[] failed = new boolean[shards.length];
+
+        // the results of the incomplete shard up to its end are kept
+        assertEquals(5, coordinator().merge(tournament(), shards, failed));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, games());
+        assertFalse(failed[0]);
+        assertTrue(failed[1]);
+        assertTrue(failed[2]);
+    }
+
+    @Test
+    void merge_ShardWithAFailedGameFails() throws IOException {
+        Path file = directory.resolve("worker");
+        Properties settings = new Properties();
+        settings.setProperty("Roster", "A:oracle, B:random");
+        settings.setProperty("ReportEvery", "0");
+        settings.setProperty("Results", "");
+        settings.setProperty("Ratings", "");
+        settings.setProperty("BinaryResults", file.toString());
+        Tournament worker = new Tournament(Logger.getAnonymousLogger(), settings);
+        worker.open();
+        worker.record(result(0));
+        worker.fail(1, new IllegalStateException("test"));
+        worker.record(result(2));
+        worker.close();
+
+        Path[] shards = {file, shard("1", true, 3)};
+        boolean[] failed = new boolean[shards.length];
+
+        // the worker does not mark the end of a shard with a failed game - its results are kept, but it fails
+        assertEquals(3, coordinator().merge(tournament(), shards, failed));
+        assertArrayEquals(new int[]{0, 2, 3}, games());
+        assertTrue(failed[0]);
+        assertFalse(failed[1]);
+    }
+}
@@ -0,0 +1,97 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeaderboardTest {
+
+    @TempDir
+    Path directory;
+
+    private static GameResult result(int game, String first, int firstScore, String second, int secondScore) {
+        return new GameResult(game, game, 10, false, new String[]{first, second}, new int[]{firstScore, secondScore},
+                new int[]{0, 1}, new int[]{firstScore, secondScore + 1}, new long[]{1000L * firstScore, 500});
+    }
+
+    @Test
+    void record_TotalsGrowAndRankPlayers() throws IOException {
+        try (Leaderboard leaderboard = new Leaderboard(directory, 1000)) {
+            // more players than the initial capacity of the index
+            for (int game = 0; game < 200; game++)
+                leaderboard.record(result(game, "p" + game, 3, "champion", 5));
+
+            assertEquals(200, leaderboard.games());
+            Leaderboard.Standing champion = leaderboard.standing("champion");
+            assertEquals(200, champion.games);
+            assertEquals(200, champion.wins);
+            assertEquals(1000, champion.totalScore);
+            assertEquals(200, champion.penalties);
+            assertEquals(0.5 / 6, champion.averageClaimMillis(), 1e-9);
+            assertEquals(1, leaderboard.standing("p17").games);
+            assertEquals(0, leaderboard.standing("p17").wins);
+            assertNull(leaderboard.standing("nobody"));
+
+            List<Leaderboard.Standing> top = leaderboard.top(3);
+            assertEquals(3, top.size());
+            assertEquals("champion", top.get(0).name);
+        }
+    }
+
+    @Test
+    void open_RecordsMissingFromTheIndexAreReplayed() throws IOException {
+        try (Leaderboard leaderboard = new Leaderboard(directory, 1000)) {
+            leaderboard.record(result(0, "a", 2, "b", 1));
+        }
+        // a result written to the log but not to the index, then a partly written one
+        Path log = directory.resolve("results-0.log");
+        byte[] bytes = Files.readAllBytes(log);
+        Files.write(log, bytes, StandardOpenOption.APPEND);
+        Files.write(log, new byte[]{1, 0, 0}, StandardOpenOption.APPEND);
+
+        try (Leaderboard leaderboard = new Leaderboard(directory, 1000)) {
+            assertEquals(2, leaderboard.games());
+            assertEquals(2, leaderboard.standing("a").wins);
+            assertEquals(2L * bytes.length, Files.size(log));
+        }
+    }
+
+    @Test
+    void record_CompactionKeepsTotals() throws IOException {
+        try (Leaderboard leaderboard = new Leaderboard(directory, 3)) {
+            for (int game = 0; game < 10; game++) leaderboard.record(result(game, "a", game, "b", 4));
+        }
+        try (Leaderboard leaderboard = new Leaderboard(directory, 3)) {
+            assertEquals(10, leaderboard.games());
+            assertEquals(45, leaderboard.standing("a").totalScore);
+            assertEquals("a", leaderboard.top(1).get(0).name);
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(1, files.filter(file -> file.toString().endsWith(".log")).count());
+            }
+        }
+    }
+
+    @Test
+    void open_DirectoryInUseFails() throws IOException {
+        try (Leaderboard leaderboard = new Leaderboard(directory, 1000)) {
+            leaderboard.record(result(0, "a", 2, "b", 1));
+            IOException e = assertThrows(IOException.class, () -> new Leaderboard(directory, 1000));
+            assertTrue(e.getMessage().contains("in use"));
+        }
+        // the lock is released on close
+        try (Leaderboard leaderboard = new Leaderboard(directory, 1000)) {
+            assertEquals(1, leaderboard.games());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class LogAnalyticsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void analyse_RebuildsTheGamesOfALog() throws IOException {
+        Path log = directory.resolve("game.log");
+        Files.write(log, String.join(System.lineSeparator(),
+                "[23:59:59.900] [INFO   ] thread main starting.",
+                "[23:59:59.950] [INFO   ] game seed -42",
+                "[23:59:59.990] [SEVERE ] placing card 5 in slot 0",
+                "[00:00:00.010] [SEVERE ] placing card 7 in slot 1",
+                "[00:00:00.020] [SEVERE ] player 1 placing token on slot 0",
+                "[00:00:00.030] [SEVERE ] player 2 placing token on slot 1",
+                "[00:00:00.040] [SEVERE ] removing player 2 token from slot 1",
+                "[00:00:00.050] [SEVERE ] setting player 1 score to 1",
+                "a line of a multi-line message",
+                "[00:00:00.060] [SEVERE ] removing card from slot 0",
+                "[00:00:00.070] [SEVERE ] removing card from slot 1",
+                "[00:00:00.080] [SEVERE ] updating countdown to 60000",
+                "[00:00:00.090] [SEVERE ] placing card 9 in slot 0",
+                "[00:00:00.100] [SEVERE ] removing card from slot 0",
+                "[00:00:00.950] [SEVERE ] announcing winner(s): player 1, player 3",
+                "[00:00:01.000] [INFO   ] game seed 7",
+                "[00:00:01.500] [SEVERE ] updating elapsed time to 0").concat(System.lineSeparator())
+                .getBytes(StandardCharsets.US_ASCII));
+
+        List<LogAnalytics.Game> games = LogAnalytics.analyse(log, true);
+
+        assertEquals(2, games.size());
+        LogAnalytics.Game game = games.get(0);
+        assertEquals(-42, game.seed);
+        assertEquals(1000, game.durationMillis());
+        assertEquals(3, game.cardsPlaced);
+        assertEquals(3, game.cardsRemoved);
+        assertEquals(1, game.sets);
+        assertEquals(1, game.reshuffles());
+        assertEquals(2, game.tokensPlaced());
+        assertEquals(1, game.tokensRemoved());
+        assertEquals(1, game.countdownUpdates);
+        assertArrayEquals(new int[]{0, 2}, game.winners);
+        assertEquals(13, game.events);
+        assertEquals(7, games.get(1).seed);
+        assertEquals(1, games.get(1).countdownUpdates);
+    }
+
+    @Test
+    void analyse_GamesOfLogsWithNoSeedLines() throws IOException {
+        // lines of a log written before the seed was logged (the dealer start is logged twice)
+        Path log = directory.resolve("2-28_15-45-04.log");
+        Files.write(log, String.join(System.lineSeparator(),
+                "[15:45:04.303] [INFO   ] thread bguspl.set.Main.main() starting.",
+                "[15:45:04.303] [SEVERE ] configuration file was loaded from resources directory.",
+                "[15:45:04.726] [INFO   ] thread dealer starting.",
+                "[15:45:04.726] [INFO   ] thread dealer starting.",
+                "[15:45:04.726] [INFO   ] thread Thread-1 starting.",
+                "[15:45:04.737] [SEVERE ] updating countdown to 5000",
+                "[15:45:04.849] [SEVERE ] placing card 78 in slot 4",
+                "[15:45:04.961] [SEVERE ] placing card 52 in slot 9",
+                "[15:45:05.743] [SEVERE ] player 4 placing token on slot 9",
+                "[15:45:07.258] [SEVERE ] exit button pressed",
+                "[15:45:07.368] [SEVERE ] removing tokens from slot 4",
+                "[15:45:07.368] [SEVERE ] removing card from slot 4",
+                "[15:45:07.478] [SEVERE ] removing player 4 token from slot 9",
+                "[15:45:07.478] [SEVERE ] removing tokens from slot 9",
+                "[15:45:07.478] [SEVERE ] removing card from slot 9",
+                "[15:45:08.595] [SEVERE ] announcing winner(s): player 1, player 2, player 3, player 4",
+                "[15:45:08.595] [INFO   ] thread dealer terminated.",
+                "[15:45:09.000] [INFO   ] thread dealer starting.",
+                "[15:45:09.100] [SEVERE ] placing card 3 in slot 0").concat(System.lineSeparator())
+                .getBytes(StandardCharsets.US_ASCII));
+        // a segment of a log that starts in the middle of a game
+        Path segment = directory.resolve("segment.log");
+        Files.write(segment, String.join(System.lineSeparator(),
+                "[15:45:05.743] [SEVERE ] player 4 placing token on slot 6",
+                "[15:45:07.368] [SEVERE ] removing card from slot 4").concat(System.lineSeparator())
+                .getBytes(StandardCharsets.US_ASCII));
+
+        List<LogAnalytics.Game> games = LogAnalytics.analyse(log, false);
+
+        assertEquals(2, games.size());
+        LogAnalytics.Game game = games.get(0);
+        assertFalse(game.seeded);
+        assertEquals(3869, game.durationMillis());
+        assertEquals(2, game.cardsPlaced);
+        assertEquals(2, game.cardsRemoved);
+        assertEquals(1, game.tokensPlaced());
+        assertEquals(1, game.tokensRemoved());
+        assertEquals(0, game.reshuffles());
+        assertArrayEquals(new int[]{0, 1, 2, 3}, game.winners);
+        assertEquals(1, games.get(1).number);
+        assertEquals(1, games.get(1).cardsPlaced);
+
+        games = LogAnalytics.analyse(segment, false);
+        assertEquals(1, games.size());
+        assertEquals(1, games.get(0).tokensPlaced());
+        assertEquals(1625, games.get(0).durationMillis());
+    }
+}
@@ -0,0 +1,152 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RollingLogHandlerTest {
+
+    private static final long DAY_MILLIS = 24 * 3_600_000L;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * @return - a handler of the run writing every record as its message and a line separator.
+     */
+    private RollingLogHandler handler(String run) throws IOException {
+        RollingLogHandler handler = new RollingLogHandler(directory, run, 1024);
+        handler.setFormatter(new Formatter() {
+            @Override
+            public String format(LogRecord record) {
+                return record.getMessage() + "\n";
+            }
+        });
+        return handler;
+    }
+
+    /**
+     * Logs records of 10 chars ("record 00\n", ...).
+     */
+    private static void log(RollingLogHandler handler, int from, int to) {
+        for (int i = from; i < to; i++) {
+            handler.publish(new LogRecord(Level.INFO, String.format("record %02d", i)));
+            // the queue is never full
+            if (i % 100 == 99) handler.flush();
+        }
+    }
+
+    private List<String> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static String read(Path file) throws IOException {
+        if (!file.toString().endsWith(".gz")) return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) > 0; ) bytes.write(buffer, 0, n);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void rotate_SegmentsHoldTheLogInOrder() throws IOException {
+        RollingLogHandler handler = handler("run");
+        handler.configure(30, 0, 0, 0, true);
+        log(handler, 0, 10);
+        handler.close();
+
+        assertEquals(Arrays.asList("run.1.log.gz", "run.2.log.gz", "run.3.log.gz", "run.log"), files());
+        StringBuilder log = new StringBuilder();
+        for (String file : files()) log.append(read(directory.resolve(file)));
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10; i++) expected.append(String.format("record %02d\n", i));
+        assertEquals(expected.toString(), log.toString());
+    }
+
+    @Test
+    void retain_OldestSegmentsOfTheRunAreDeletedByCount() throws IOException {
+        RollingLogHandler handler = handler("run");
+        handler.configure(30, 3, 0, 0, false);
+        log(handler, 0, 20);
+        handler.close();
+
+        assertEquals(Arrays.asList("run.5.log", "run.6.log", "run.log"), files());
+        assertEquals("record 12\nrecord 13\nrecord 14\n", read(directory.resolve("run.5.log")));
+    }
+
+    @Test
+    void retain_OldestSegmentsOfTheRunAreDeletedBySize() throws IOException {
+        RollingLogHandler handler = handler("run");
+        // the active segment and two closed ones fit in 80 chars
+        handler.configure(30, 0, 80, 0, false);
+        log(handler, 0, 14);
+        handler.close();
+
+        assertEquals(Arrays.asList("run.3.log", "run.4.log", "run.log"), files());
+    }
+
+    @Test
+    void retain_ExpiredSegmentsOfTheRunAreDeletedAndOtherLogsAreKept() throws IOException {
+        long old = System.currentTimeMillis() - 10 * DAY_MILLIS;
+        for (String name : new String[]{"run.1.log.gz", "run.2.log", "2-19_18-36-28.log", "other.1.log", "other.1.log.gz.tmp"}) {
+            Files.write(directory.resolve(name), name.getBytes(StandardCharsets.US_ASCII));
+            Files.setLastModifiedTime(directory.resolve(name), FileTime.fromMillis(old));
+        }
+        Files.write(directory.resolve("run.3.log"), "recent".getBytes(StandardCharsets.US_ASCII));
+
+        RollingLogHandler handler = handler("run");
+        handler.configure(0, 0, 0, 5 * DAY_MILLIS, true);
+        log(handler, 0, 2);
+        handler.close();
+
+        // the logs of other runs (even an old or cut off one) are not touched
+        assertEquals(Arrays.asList("2-19_18-36-28.log", "other.1.log", "other.1.log.gz.tmp", "run.3.log.gz", "run.log"), files());
+        assertEquals(old, Files.getLastModifiedTime(directory.resolve("2-19_18-36-28.log")).toMillis());
+        assertEquals("recent", read(directory.resolve("run.3.log.gz")));
+    }
+
+    @Test
+    void configure_CutOffCompressionIsRedone() throws IOException {
+        Files.write(directory.resolve("run.1.log"), "record 00\n".getBytes(StandardCharsets.US_ASCII));
+        // a compression cut off in the middle of the file
+        Files.write(directory.resolve("run.1.log.gz.tmp"), new byte[]{0x1f, (byte) 0x8b, 8});
+
+        RollingLogHandler handler = handler("run");
+        handler.configure(30, 0, 0, 0, true);
+        log(handler, 1, 4);
+        handler.close();
+
+        List<String> files = files();
+        assertFalse(files.contains("run.1.log.gz.tmp"));
+        assertFalse(files.contains("run.1.log"));
+        assertEquals("record 00\n", read(directory.resolve("run.1.log.gz")));
+        // the run goes on numbering its segments after the ones it has
+        assertTrue(files.contains("run.2.log.gz"));
+        assertArrayEquals("record 01\nrecord 02\nrecord 03\n".getBytes(StandardCharsets.US_ASCII),
+                read(directory.resolve("run.2.log.gz")).getBytes(StandardCharsets.US_ASCII));
+    }
+}
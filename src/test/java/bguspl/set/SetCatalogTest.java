@@ -0,0 +1,76 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SetCatalogTest {
+
+    private static final String FILE = "cards-3x4.catalog";
+
+    private final Config config = new Config(Logger.getAnonymousLogger(), new Properties());
+    private final UtilImpl util = new UtilImpl(config);
+
+    private void assertMatchesUtil(SetCatalog catalog) {
+        assertTrue(catalog.hasCompletions());
+        int[] features = new int[config.featureCount];
+        for (int card = 0; card < config.deckSize; card++) {
+            catalog.cardToFeatures(card, features);
+            assertArrayEquals(util.cardToFeatures(card), features);
+        }
+        for (int first = 0; first < config.deckSize; first++)
+            for (int second = 0; second < config.deckSize; second++) {
+                if (first == second) continue;
+                int third = catalog.complete(first, second);
+                assertTrue(util.testSet(new int[]{first, second, third}));
+            }
+    }
+
+    private static long tempFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".tmp")).count();
+        }
+    }
+
+    @Test
+    void load_BuildsACatalogMatchingTestSet(@TempDir Path directory) throws IOException {
+        assertMatchesUtil(SetCatalog.load(directory, config.featureSize, config.featureCount));
+        assertTrue(Files.isRegularFile(directory.resolve(FILE)));
+        assertEquals(0, tempFiles(directory));
+    }
+
+    @Test
+    void load_ReopensAnExistingFile(@TempDir Path built, @TempDir Path copy) throws IOException {
+        SetCatalog.load(built, config.featureSize, config.featureCount);
+        Path file = Files.copy(built.resolve(FILE), copy.resolve(FILE));
+        FileTime time = FileTime.fromMillis(1_000_000L);
+        Files.setLastModifiedTime(file, time);
+
+        // a valid file is mapped as it is, not rebuilt
+        assertMatchesUtil(SetCatalog.load(copy, config.featureSize, config.featureCount));
+        assertEquals(time, Files.getLastModifiedTime(file));
+    }
+
+    @Test
+    void load_RebuildsAFileWithABadHeader(@TempDir Path built, @TempDir Path copy) throws IOException {
+        SetCatalog.load(built, config.featureSize, config.featureCount);
+        byte[] bytes = Files.readAllBytes(built.resolve(FILE));
+        bytes[0] ^= 0x7f;
+        Path file = Files.write(copy.resolve(FILE), bytes);
+
+        assertMatchesUtil(SetCatalog.load(copy, config.featureSize, config.featureCount));
+        assertArrayEquals(Files.readAllBytes(built.resolve(FILE)), Files.readAllBytes(file));
+        assertEquals(0, tempFiles(copy));
+    }
+}
@@ -0,0 +1,86 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TournamentTest {
+
+    @TempDir
+    Path directory;
+
+    private Tournament tournament() {
+        Properties settings = new Properties();
+        settings.setProperty("Roster", "A:oracle, B:random, C:random");
+        settings.setProperty("EloK", "32");
+        settings.setProperty("EloInitial", "1500");
+        settings.setProperty("ReportEvery", "0");
+        settings.setProperty("Results", directory.resolve("results.csv").toString());
+        settings.setProperty("Ratings", directory.resolve("ratings.csv").toString());
+        return new Tournament(Logger.getAnonymousLogger(), settings);
+    }
+
+    private static GameResult result(int game, String[] names, int[] scores) {
+        return new GameResult(game, 100 + game, 1000, false, names, scores, new int[names.length],
+                scores.clone(), new long[names.length]);
+    }
+
+    /**
+     * @return - the rating of a roster entry in the rating table.
+     */
+    private double rating(List<String> table, String name) {
+        for (String line : table.subList(1, table.size())) {
+            String[] fields = line.split(",");
+            if (fields[1].equals(name)) return Double.parseDouble(fields[3]);
+        }
+        throw new AssertionError("no rating for " + name);
+    }
+
+    @Test
+    void record_PairwiseEloUpdate() throws IOException {
+        Tournament tournament = tournament();
+        tournament.open();
+        // equal ratings: the winner gets K/2 and the loser loses it
+        tournament.record(result(0, new String[]{"A", "B"}, new int[]{3, 1}));
+        // 1516 against 1500: A expected 1 / (1 + 10^(-16/400)) = 0.5230 - the loss costs him 32 * 0.5230
+        tournament.record(result(1, new String[]{"C", "A"}, new int[]{2, 1}));
+        tournament.close();
+
+        List<String> ratings = Files.readAllLines(directory.resolve("ratings.csv"), StandardCharsets.UTF_8);
+        assertEquals("rank,name,strategy,rating,games,wins,winRate,averageScore,averagePenalties", ratings.get(0));
+        double expected = 1.0 / (1.0 + Math.pow(10, -16 / 400.0));
+        assertEquals(1516 - 32 * expected, rating(ratings, "A"), 0.05);
+        assertEquals(1484, rating(ratings, "B"), 0.05);
+        assertEquals(1500 + 32 * expected, rating(ratings, "C"), 0.05);
+        assertEquals("1,C,random,1516.7,1,1,1.000,2.00,0.00", ratings.get(1));
+
+        List<String> results = Files.readAllLines(directory.resolve("results.csv"), StandardCharsets.UTF_8);
+        assertEquals(5, results.size());
+        assertEquals("game,seed,durationMillis,timedOut,player,name,strategy,score,penalties,winner", results.get(0));
+        assertEquals("0,100,1000,false,0,A,oracle,3,0,true", results.get(1));
+        assertEquals("1,101,1000,false,1,A,oracle,1,0,false", results.get(4));
+    }
+
+    @Test
+    void record_ChangeIsAveragedOverOpponents() throws IOException {
+        Tournament tournament = tournament();
+        tournament.open();
+        // A beats both, B and C tie: A gets (16 + 16) / 2, B and C lose 16 / 2 each
+        tournament.record(result(0, new String[]{"A", "B", "C"}, new int[]{5, 2, 2}));
+        tournament.close();
+
+        List<String> ratings = Files.readAllLines(directory.resolve("ratings.csv"), StandardCharsets.UTF_8);
+        assertEquals(1516, rating(ratings, "A"), 1e-9);
+        assertEquals(1492, rating(ratings, "B"), 1e-9);
+        assertEquals(1492, rating(ratings, "C"), 1e-9);
+    }
+}
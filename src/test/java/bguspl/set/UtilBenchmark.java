@@ -0,0 +1,49 @@
+package bguspl.set;
+
+
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.logging.Logger;
+
+/**
+ * Compares Util.testSets to calling Util.testSet for each candidate (not a test - run its main).
+ * Arguments: [feature size] [feature count] [candidates] [rounds].
+ */
+public class UtilBenchmark {
+
+    public static void main(String[] args) {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", args.length > 0 ? args[0] : "3");
+        properties.put("FeatureCount", args.length > 1 ? args[1] : "4");
+        int count = args.length > 2 ? Integer.parseInt(args[2]) : 1 << 20;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        Config config = new Config(Logger.getAnonymousLogger(), properties);
+        UtilImpl util = new UtilImpl(config);
+
+        int size = config.featureSize;
+        int[] cards = new int[count * size];
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < cards.length; i++) cards[i] = random.nextInt(config.deckSize);
+        boolean[] valid = new boolean[count];
+        int[] set = new int[size];
+
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            int legal = 0;
+            for (int i = 0; i < count; i++) {
+                System.arraycopy(cards, i * size, set, 0, size);
+                if (util.testSet(set)) legal++;
+            }
+            long single = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            util.testSets(cards, count, valid);
+            long batch = System.nanoTime() - start;
+            for (boolean b : valid) if (b) legal--;
+
+            System.out.printf("round %d: testSet %.1f ns/candidate, testSets %.1f ns/candidate (x%.1f)%s%n", round,
+                    (double) single / count, (double) batch / count, (double) single / batch,
+                    legal == 0 ? "" : " - results differ!");
+        }
+    }
+}
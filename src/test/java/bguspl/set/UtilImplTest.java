@@ -0,0 +1,131 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UtilImplTest {
+
+    private static Config config(int featureSize, int featureCount) {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", String.valueOf(featureSize));
+        properties.put("FeatureCount", String.valueOf(featureCount));
+        return new Config(Logger.getAnonymousLogger(), properties);
+    }
+
+    @Test
+    void testSets_AgreesWithTestSet() {
+        // the last configuration does not fit the feature words - the batch falls back to testSet
+        int[][] configurations = {{3, 4}, {2, 5}, {4, 3}, {5, 2}, {3, 7}, {3, 13}};
+        SplittableRandom random = new SplittableRandom(11);
+        for (int[] configuration : configurations) {
+            Config config = config(configuration[0], configuration[1]);
+            UtilImpl util = new UtilImpl(config);
+            int size = config.featureSize;
+            int count = 2000;
+            int[] cards = new int[count * size];
+            for (int i = 0; i < count; i++) {
+                int[] set = new int[size];
+                // every other candidate is completed to a legal set, so both answers are common
+                for (int j = 0; j < size; j++) set[j] = random.nextInt(config.deckSize);
+                if (i % 2 == 0) complete(util, config, set);
+                System.arraycopy(set, 0, cards, i * size, size);
+            }
+
+            boolean[] valid = new boolean[count];
+            util.testSets(cards, count, valid);
+
+            int legal = 0;
+            for (int i = 0; i < count; i++) {
+                int[] set = new int[size];
+                System.arraycopy(cards, i * size, set, 0, size);
+                assertEquals(util.testSet(set), valid[i]);
+                if (valid[i]) legal++;
+            }
+            assertTrue(legal >= count / 2);
+        }
+    }
+
+    @Test
+    void findAllSets_ParallelMatchesSequentialAndFindSets(@TempDir Path directory) throws IOException {
+        int[][] configurations = {{3, 4}, {4, 3}};
+        for (int[] configuration : configurations) {
+            Config config = config(configuration[0], configuration[1]);
+            List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+            Collections.shuffle(deck, new Random(3));
+            UtilImpl util = new UtilImpl(config);
+            List<int[]> expected = util.findSets(deck, Integer.MAX_VALUE);
+            assertTrue(expected.size() > 100);
+
+            ForkJoinPool single = new ForkJoinPool(1);
+            try {
+                assertSameSets(expected, single.invoke(new SetSearch(util, null, config, deck, null)).toList());
+            } finally {
+                single.shutdown();
+            }
+            assertSameSets(expected, util.findAllSets(deck));
+            if (config.featureSize == 3) {
+                UtilImpl catalogued = new UtilImpl(config,
+                        SetCatalog.load(directory, config.featureSize, config.featureCount));
+                assertSameSets(expected, catalogued.findSets(deck, Integer.MAX_VALUE));
+                assertSameSets(expected, catalogued.findAllSets(deck));
+            }
+
+            // the action is called from several threads, in no particular order
+            List<int[]> streamed = Collections.synchronizedList(new ArrayList<>());
+            util.forEachSet(deck, streamed::add);
+            assertSameSets(sorted(expected), sorted(streamed));
+
+            // below the parallel threshold findAllSets is findSets
+            List<Integer> small = deck.subList(0, 20);
+            assertSameSets(util.findSets(small, Integer.MAX_VALUE), util.findAllSets(small));
+        }
+    }
+
+    private static void assertSameSets(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) assertArrayEquals(expected.get(i), actual.get(i));
+    }
+
+    private static List<int[]> sorted(List<int[]> sets) {
+        List<int[]> copy = new ArrayList<>(sets);
+        copy.sort(Comparator.comparing(Arrays::toString));
+        return copy;
+    }
+
+    /**
+     * Makes the cards a legal set: every feature is either the feature of the first card in all of them or
+     * different in each one of them.
+     */
+    private static void complete(UtilImpl util, Config config, int[] set) {
+        int[][] features = util.cardsToFeatures(set);
+        SplittableRandom random = new SplittableRandom(set[0]);
+        for (int i = 0; i < config.featureCount; i++) {
+            boolean same = random.nextBoolean();
+            for (int j = 0; j < set.length; j++) features[j][i] = same ? features[0][i] : j;
+        }
+        for (int j = 0; j < set.length; j++) {
+            int card = 0;
+            for (int i = 0; i < config.featureCount; i++) card = card * config.featureSize + features[j][i];
+            set[j] = card;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControlTest {
+
+    private static Env env(String policy) {
+        Properties properties = new Properties();
+        properties.put("InputRatePerSecond", "1");
+        properties.put("InputBurst", "3");
+        properties.put("ClaimRatePerSecond", "50");
+        properties.put("ClaimBurst", "1");
+        properties.put("AdmissionPolicy", policy);
+        properties.put("AdmissionMaxDeferSeconds", "0.1");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        return new Env(logger, new Config(logger, properties), new TableTest.MockUserInterface(), new TableTest.MockUtil());
+    }
+
+    @Test
+    void admitPress_BurstThenDrop() {
+        Env env = env("drop");
+        AdmissionControl admission = new AdmissionControl(env);
+
+        for (int i = 0; i < 3; i++) assertTrue(admission.admitPress(0));
+        assertFalse(admission.admitPress(0));
+        // the buckets of the other players are their own
+        assertTrue(admission.admitPress(1));
+        assertEquals(1, env.metrics.get("admission.pressesDropped"));
+    }
+
+    @Test
+    void admitClaim_DeferredWithinTheLimit() {
+        Env env = env("defer");
+        AdmissionControl admission = new AdmissionControl(env);
+
+        long start = System.nanoTime();
+        assertTrue(admission.admitClaim());
+        assertTrue(admission.admitClaim());
+        // the second claim waits for its token (1/50 seconds)
+        assertTrue(System.nanoTime() - start >= 15_000_000);
+        assertEquals(1, env.metrics.get("admission.claimsDeferred"));
+        // a press over the limit would wait longer than allowed
+        for (int i = 0; i < 3; i++) admission.admitPress(0);
+        assertFalse(admission.admitPress(0));
+    }
+}
@@ -0,0 +1,80 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClaimQueueTest {
+
+    private static Claim claim(int player) {
+        return new Claim(player, new int[]{0, 1, 2}, new int[3], player);
+    }
+
+    @Test
+    void drainTo_ClaimsInOrderAndCancelledSkipped() {
+        ClaimQueue queue = new ClaimQueue(2);
+        assertTrue(queue.isEmpty());
+        queue.add(claim(0));
+        queue.add(claim(1));
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        // the ring wraps around many times
+        List<Claim> batch = new ArrayList<>();
+        for (int round = 0; round < 10; round++) {
+            Claim first = claim(0), second = claim(1);
+            queue.add(first);
+            queue.add(second);
+            assertSame(first, queue.peek());
+            batch.clear();
+            assertEquals(2, queue.drainTo(batch));
+            assertSame(first, batch.get(0));
+            assertSame(second, batch.get(1));
+            assertNull(queue.peek());
+        }
+    }
+
+    @Test
+    void await_UnparkedByAClaim() throws InterruptedException {
+        ClaimQueue queue = new ClaimQueue(1);
+        List<Claim> batch = new ArrayList<>();
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {}
+            queue.add(claim(0));
+        });
+        producer.start();
+        long start = System.nanoTime();
+        while (queue.drainTo(batch) == 0) queue.await(10, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        producer.join();
+        assertEquals(1, batch.size());
+    }
+
+    @Test
+    void clear_FreesThePositionsOfTheCancelledClaims() {
+        ClaimQueue queue = new ClaimQueue(1);
+        List<Claim> batch = new ArrayList<>();
+        // a claim is cancelled by every reshuffle, more times than the ring has positions
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int round = 0; round < 20; round++) {
+                queue.add(claim(0));
+                queue.clear();
+                assertTrue(queue.isEmpty());
+            }
+            Claim last = claim(0);
+            queue.add(last);
+            assertEquals(1, queue.drainTo(batch));
+            assertSame(last, batch.get(0));
+        });
+    }
+}
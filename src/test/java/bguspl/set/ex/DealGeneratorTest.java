@@ -0,0 +1,71 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DealGeneratorTest {
+
+    Env env;
+    DealGenerator generator;
+    Deck deck;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("DealMinimumSets", "2");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        generator = new DealGenerator(env, new SplittableRandom(7));
+        deck = new Deck(config.deckSize, new SplittableRandom(7));
+    }
+
+    @Test
+    void stack_DealContainsSets() {
+        for (int deal = 0; deal < 100; deal++) {
+            assertEquals(2, generator.stack(deck, env.config.tableSize));
+
+            List<Integer> cards = deck.asList().subList(0, env.config.tableSize);
+            assertFalse(env.util.findSets(cards, 1).isEmpty());
+        }
+    }
+
+    @Test
+    void stack_DeckWithoutSets() {
+        // draw everything but two cards - no set can be formed
+        while (deck.size() > 2) deck.draw();
+
+        assertEquals(0, generator.stack(deck, env.config.tableSize));
+        assertEquals(2, deck.size());
+    }
+
+    @Test
+    void stackCompletion_TopCardCompletesASet() {
+        for (int deal = 0; deal < 100; deal++) {
+            deck = new Deck(env.config.deckSize, new SplittableRandom(deal));
+            int[] board = new int[env.config.tableSize];
+            for (int i = 0; i < board.length; i++) board[i] = deck.draw();
+
+            int[] group = generator.stackCompletion(board, deck);
+
+            // 12 cards and the 69 cards of the deck always have a completion
+            assertNotNull(group);
+            int[] set = new int[env.config.featureSize];
+            for (int i = 0; i < group.length; i++) set[i] = board[group[i]];
+            set[group.length] = deck.get(0);
+            assertTrue(env.util.testSet(set));
+        }
+    }
+}
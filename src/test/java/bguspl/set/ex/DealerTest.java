@@ -0,0 +1,133 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class DealerTest {
+
+    Env env;
+    Table table;
+    Player[] players;
+    Dealer dealer;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "3");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("Seed", "5");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        table = spy(new Table(env));
+        players = new Player[config.players];
+        dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++) players[i] = new Player(env, dealer, table, i, false);
+        dealer.placeCardsOnTable();
+    }
+
+    private void claim(int player, int[] slots) {
+        for (int slot : slots) table.placeToken(player, slot);
+    }
+
+    @Test
+    void removeCardsFromTable_EarliestOverlappingClaimWins() {
+        BoardSnapshot board = table.snapshot();
+        List<int[]> sets = env.util.findSets(board.cards(), 1);
+        assertFalse(sets.isEmpty());
+        int[] set = new int[sets.get(0).length];
+        for (int i = 0; i < set.length; i++) set[i] = board.slotOf(sets.get(0)[i]);
+
+        // the other slots: a claim sharing a card of the set, and a wrong set that shares none
+        List<Integer> others = new ArrayList<>();
+        for (int slot = 0; slot < env.config.tableSize; slot++) others.add(slot);
+        for (int slot : set) others.remove((Integer) slot);
+        int[] overlapping = {set[0], others.get(0), others.get(1)};
+        int[] wrong = null;
+        for (int a = 2; a < others.size() && wrong == null; a++)
+            for (int b = a + 1; b < others.size() && wrong == null; b++)
+                for (int c = b + 1; c < others.size() && wrong == null; c++) {
+                    int[] slots = {others.get(a), others.get(b), others.get(c)};
+                    int[] cards = {board.card(slots[0]), board.card(slots[1]), board.card(slots[2])};
+                    if (!env.util.testSet(cards)) wrong = slots;
+                }
+        assertTrue(wrong != null);
+
+        claim(0, set);
+        claim(1, overlapping);
+        claim(2, wrong);
+
+        // the claims reach the dealer in the reverse order - he resolves them by the time they were made
+        List<Claim> claims = new ArrayList<>();
+        table.waitingForDealer.drainTo(claims);
+        assertEquals(3, claims.size());
+        Collections.reverse(claims);
+        claims.forEach(table.waitingForDealer::add);
+
+        dealer.removeCardsFromTable();
+
+        assertTrue(players[0].point);
+        assertFalse(players[1].point);
+        assertFalse(players[1].penalty);
+        assertTrue(players[2].penalty);
+        assertEquals(1, dealer.claims(0));
+        assertEquals(0, dealer.claims(1));
+        assertEquals(1, dealer.claims(2));
+
+        // the set is removed at once, the tokens of the wrong set are removed, the dropped claim keeps the rest
+        verify(table, times(1)).removeCards(any());
+        verify(table, never()).removeCard(anyInt());
+        for (int card : sets.get(0)) assertEquals(-1, table.snapshot().slotOf(card));
+        for (int slot : wrong) assertNotEquals(-1, table.snapshot().card(slot));
+        assertEquals(0, table.tokens.get(0).size());
+        assertEquals(2, table.tokens.get(1).size());
+        assertEquals(0, table.tokens.get(2).size());
+        assertTrue(table.waitingForDealer.isEmpty());
+    }
+
+    @Test
+    void restore_WaitingClaimIsResubmitted() {
+        table = new Table(env);
+        Dealer restored = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++) players[i] = new Player(env, restored, table, i, false);
+
+        // cards 0, 1 and 2 differ only in the last feature - a legal set
+        BoardSnapshot board = BoardSnapshot.empty(env.config.tableSize, env.config.players);
+        for (int slot = 0; slot < env.config.tableSize; slot++) board = board.withCard(slot + 1, slot, slot);
+        for (int slot = 0; slot < 3; slot++) board = board.withToken(0, slot, true);
+        board = board.withToken(1, 5, true);
+        int[] deck = new int[env.config.deckSize - env.config.tableSize];
+        for (int i = 0; i < deck.length; i++) deck[i] = env.config.tableSize + i;
+        assertTrue(restored.restore(new GameCheckpoint(4, board, deck, new int[]{2, 1, 0}, new int[]{0, 3, 0}, 0)));
+
+        assertEquals(2, players[0].score());
+        assertEquals(3, players[1].penalties());
+        assertFalse(table.waitingForDealer.isEmpty());
+        restored.removeCardsFromTable();
+
+        assertTrue(players[0].point);
+        assertEquals(1, restored.claims(0));
+        for (int card = 0; card < 3; card++) assertEquals(-1, table.snapshot().slotOf(card));
+        assertEquals(1, table.tokens.get(1).size());
+    }
+}
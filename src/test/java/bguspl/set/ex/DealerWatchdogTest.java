@@ -0,0 +1,110 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DealerWatchdogTest {
+
+    private static final long MILLIS = 1_000_000;
+
+    Env env;
+    DealerWatchdog watchdog;
+    long now;
+    List<String> severe = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("WatchdogLagSeconds", "2");
+        properties.put("WatchdogStallSeconds", "10");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getLevel().intValue() >= Level.SEVERE.intValue())
+                    severe.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        });
+        Config config = new Config(logger, properties);
+        env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        now = 1000 * MILLIS;
+        watchdog = new DealerWatchdog(env, () -> now);
+    }
+
+    @Test
+    void check_LagIsFlaggedOnce() {
+        now += 1999 * MILLIS;
+        watchdog.check();
+        assertEquals(0, env.metrics.get("watchdog.lags"));
+
+        now += 2 * MILLIS;
+        watchdog.check();
+        watchdog.check();
+        assertEquals(1, env.metrics.get("watchdog.lags"));
+        assertEquals(2001, env.metrics.get("watchdog.maxLagMillis"));
+
+        // a beat ends the lag - the next one is flagged again
+        watchdog.beat();
+        watchdog.check();
+        now += 2500 * MILLIS;
+        watchdog.check();
+        assertEquals(2, env.metrics.get("watchdog.lags"));
+        assertEquals(0, env.metrics.get("watchdog.stalls"));
+        assertTrue(severe.isEmpty());
+    }
+
+    @Test
+    void check_StallDumpsTheThreads() {
+        now += 10_001 * MILLIS;
+        watchdog.check();
+        watchdog.check();
+        assertEquals(1, env.metrics.get("watchdog.stalls"));
+        assertEquals(1, severe.size());
+        assertTrue(severe.get(0).startsWith("dealer stalled for 10001 ms - thread dump:"));
+        assertTrue(severe.get(0).contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    void check_PlayerWaitingForTheDealerStalls() {
+        watchdog.waiting(1);
+        now += 6000 * MILLIS;
+        // the dealer keeps beating, but the player still waits since he started
+        watchdog.beat();
+        watchdog.waiting(1);
+        now += 4001 * MILLIS;
+        watchdog.check();
+        watchdog.check();
+        assertEquals(1, env.metrics.get("watchdog.playerStalls"));
+        assertEquals(0, env.metrics.get("watchdog.stalls"));
+        assertEquals(1, severe.size());
+        assertTrue(severe.get(0).startsWith("player 2 waits for the dealer for 10001 ms"));
+
+        // a new wait is a new stall
+        watchdog.resumed(1);
+        watchdog.waiting(1);
+        watchdog.beat();
+        now += 10_001 * MILLIS;
+        watchdog.beat();
+        watchdog.check();
+        assertEquals(2, env.metrics.get("watchdog.playerStalls"));
+    }
+}
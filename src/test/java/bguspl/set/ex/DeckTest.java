@@ -0,0 +1,52 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeckTest {
+
+    Deck deck;
+
+    @BeforeEach
+    void setUp() {
+        deck = new Deck(81, new SplittableRandom(42));
+        deck.shuffle();
+    }
+
+    @Test
+    void draw_CardIsNoLongerInDeck() {
+        int card = deck.draw();
+
+        assertFalse(deck.contains(card));
+        assertEquals(80, deck.size());
+    }
+
+    @Test
+    void putBack_CardIsOnTopOfDeck() {
+        int card = deck.draw();
+        deck.draw();
+        deck.putBack(card);
+
+        assertTrue(deck.contains(card));
+        assertEquals(card, deck.get(0));
+        assertEquals(80, deck.size());
+    }
+
+    @Test
+    void shuffle_DeckKeepsAllCards() {
+        for (int i = 0; i < 10; i++) deck.draw();
+        deck.shuffle(5);
+
+        Set<Integer> cards = new HashSet<>(deck.asList());
+        assertEquals(71, cards.size());
+        for (int card : cards) assertTrue(deck.contains(card));
+    }
+}
@@ -0,0 +1,59 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameCheckpointTest {
+
+    private static GameCheckpoint checkpoint() {
+        BoardSnapshot board = BoardSnapshot.empty(12, 2)
+                .withCard(1, 0, 5).withCard(2, 3, 17).withCard(3, 11, 80)
+                .withToken(1, 3, true).withToken(1, 11, true);
+        return new GameCheckpoint(7, board, new int[]{9, 2, 44}, new int[]{3, 1}, new int[]{0, 2}, 41_500);
+    }
+
+    private static ByteBuffer encode(GameCheckpoint checkpoint) {
+        ByteBuffer buffer = ByteBuffer.allocate(checkpoint.encodedSize());
+        checkpoint.encode(buffer, new CRC32());
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    void decode_ReturnsTheEncodedState() {
+        GameCheckpoint decoded = GameCheckpoint.decode(encode(checkpoint()));
+
+        assertNotNull(decoded);
+        assertEquals(7, decoded.sequence);
+        assertEquals(41_500, decoded.timerMillis);
+        assertEquals(17, decoded.board.card(3));
+        assertEquals(-1, decoded.board.card(4));
+        assertArrayEquals(new int[]{9, 2, 44}, decoded.deck);
+        assertArrayEquals(new int[]{3, 1}, decoded.scores);
+        assertArrayEquals(new int[]{0, 2}, decoded.penalties);
+        assertTrue(decoded.board.hasToken(1, 11));
+        assertEquals(0, decoded.board.tokenCount(0));
+        assertEquals(2, decoded.board.tokenCount(1));
+    }
+
+    @Test
+    void decode_TornOrCorruptFileIsRejected() {
+        ByteBuffer torn = encode(checkpoint());
+        torn.limit(torn.limit() - 1);
+        assertNull(GameCheckpoint.decode(torn));
+
+        ByteBuffer corrupt = encode(checkpoint());
+        corrupt.put(GameCheckpoint.HEADER_BYTES + 10, (byte) 1);
+        assertNull(GameCheckpoint.decode(corrupt));
+    }
+}
@@ -0,0 +1,144 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameStateTest {
+
+    Env env;
+    GameState state;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "2");
+        properties.put("ComputerStrategies", "oracle,random");
+        properties.put("ComputerPressDelaySeconds", "0.1,0.05");
+        properties.put("TurnTimeoutSeconds", "10");
+        properties.put("PointFreezeSeconds", "1");
+        properties.put("PenaltyFreezeSeconds", "3");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        state = new GameState(env, 7);
+    }
+
+    /**
+     * @return - the slots of a set on the table, or of three cards that are not a set.
+     */
+    private int[] slots(boolean set) {
+        BoardSnapshot board = state.board();
+        List<Integer> cards = board.cards();
+        int[] result = new int[env.config.featureSize];
+        if (set) {
+            int[] found = env.util.findSets(cards, 1).get(0);
+            for (int i = 0; i < result.length; i++) result[i] = board.slotOf(found[i]);
+            return result;
+        }
+        int[] claim = new int[result.length];
+        for (int a = 0; a < cards.size(); a++)
+            for (int b = a + 1; b < cards.size(); b++)
+                for (int c = b + 1; c < cards.size(); c++) {
+                    claim[0] = cards.get(a);
+                    claim[1] = cards.get(b);
+                    claim[2] = cards.get(c);
+                    if (!env.util.testSet(claim)) {
+                        for (int i = 0; i < result.length; i++) result[i] = board.slotOf(claim[i]);
+                        return result;
+                    }
+                }
+        throw new AssertionError("every triple is a set");
+    }
+
+    @Test
+    void apply_LegalSetScoresAndReplacesItsCards() {
+        int[] set = slots(true);
+        int[] cards = new int[set.length];
+        for (int i = 0; i < set.length; i++) cards[i] = state.board().card(set[i]);
+        int deckSize = state.deckSize();
+
+        for (int slot : set) assertTrue(state.apply(0, slot));
+
+        assertEquals(1, state.score(0));
+        assertEquals(0, state.tokenCount(0));
+        assertEquals(deckSize - set.length, state.deckSize());
+        for (int card : cards) assertEquals(-1, state.board().slotOf(card));
+        assertTrue(state.isFrozen(0));
+    }
+
+    @Test
+    void apply_WrongSetIsPenalizedAndFrozen() {
+        int[] wrong = slots(false);
+
+        for (int slot : wrong) state.apply(1, slot);
+
+        assertEquals(0, state.score(1));
+        assertEquals(1, state.penalties(1));
+        assertEquals(0, state.tokenCount(1));
+        assertFalse(state.apply(1, wrong[0]));
+
+        state.tick(env.config.penaltyFreezeMillis);
+        assertTrue(state.apply(1, wrong[0]));
+        assertEquals(1, state.tokenCount(1));
+    }
+
+    @Test
+    void resolve_EarliestOverlappingClaimWins() {
+        int[] set = slots(true);
+        int[] overlapping = {set[0], -1, -1};
+        for (int slot = 0, n = 1; n < overlapping.length; slot++)
+            if (slot != set[0] && slot != set[1] && slot != set[2]) overlapping[n++] = slot;
+        int card = state.board().card(set[0]);
+        state.tick(env.config.turnTimeoutMillis / 2);
+
+        GameState.Verdict[] verdicts = state.resolve(new int[]{0, 1}, new int[][]{set, overlapping});
+
+        assertEquals(GameState.Verdict.POINT, verdicts[0]);
+        assertEquals(GameState.Verdict.DROPPED, verdicts[1]);
+        assertEquals(1, state.score(0));
+        assertEquals(1, state.claims(0));
+        assertEquals(0, state.claims(1));
+        assertEquals(0, state.penalties(1));
+        assertFalse(state.isFrozen(1));
+        assertEquals(-1, state.board().slotOf(card));
+        // a point starts a new turn
+        assertEquals(env.config.turnTimeoutMillis, state.remainingMillis());
+    }
+
+    @Test
+    void tick_TimeoutReshuffles() {
+        state.apply(0, slots(true)[0]);
+
+        state.tick(env.config.turnTimeoutMillis - 1);
+        assertEquals(0, state.reshuffles());
+
+        state.tick(1);
+        assertEquals(1, state.reshuffles());
+        assertEquals(0, state.tokenCount(0));
+    }
+
+    @Test
+    void play_SameSeedSameGame() {
+        GameState first = Simulation.play(env, 11, 60_000);
+        GameState second = Simulation.play(env, 11, 60_000);
+
+        assertTrue(first.score(0) > 0);
+        assertEquals(first.clock(), second.clock());
+        assertEquals(first.presses(), second.presses());
+        for (int player = 0; player < first.players(); player++) {
+            assertEquals(first.score(player), second.score(player));
+            assertEquals(first.penalties(player), second.penalties(player));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class HintServiceTest {
+
+    Table table;
+    HintService hints;
+    Thread thread;
+
+    /**
+     * The cards versions the hints were published for.
+     */
+    BlockingQueue<Long> published;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("TableDelaySeconds", "0");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        table = new Table(env);
+        // cards 0, 1 and 2 are a set
+        for (int slot = 0; slot < config.tableSize; slot++) table.placeCard(slot, slot);
+
+        published = new LinkedBlockingQueue<>();
+        hints = new HintService(env, table, Collections.singletonList((version, sets) -> published.add(version)));
+        thread = new Thread(hints, "hints");
+        thread.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        hints.terminate();
+    }
+
+    @Test
+    void run_HintsFollowTheCardsNotTheTokens() throws InterruptedException {
+        Long first = published.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertEquals(table.snapshot().cardsVersion, (long) first);
+
+        // a token changes the board, but not its cards
+        table.placeToken(0, 0);
+        hints.boardChanged();
+        assertNull(published.poll(200, TimeUnit.MILLISECONDS));
+
+        table.removeCard(11);
+        hints.boardChanged();
+        Long second = published.poll(5, TimeUnit.SECONDS);
+        assertNotNull(second);
+        assertEquals(table.snapshot().cardsVersion, (long) second);
+        assertNull(published.poll(200, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,95 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InputRingTest {
+
+    Env env;
+    int[] slots;
+    long[] times;
+
+    @BeforeEach
+    void setUp() {
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, new Properties());
+        env = new Env(logger, config, new TableTest.MockUserInterface(), new TableTest.MockUtil());
+        slots = new int[8];
+        times = new long[8];
+    }
+
+    @Test
+    void offer_OverflowDropsOldestOrNewest() {
+        InputRing oldest = new InputRing(env, 4, InputRing.Overflow.DROP_OLDEST, InputRing.Coalescing.NONE, 0);
+        InputRing newest = new InputRing(env, 4, InputRing.Overflow.DROP_NEWEST, InputRing.Coalescing.NONE, 0);
+        for (int slot = 0; slot < 6; slot++) {
+            assertTrue(oldest.offer(slot, slot));
+            assertEquals(slot < 4, newest.offer(slot, slot));
+        }
+
+        assertEquals(4, oldest.drain(slots, times));
+        assertArrayEquals(new int[]{2, 3, 4, 5}, Arrays.copyOf(slots, 4));
+        assertEquals(4, newest.drain(slots, times));
+        assertArrayEquals(new int[]{0, 1, 2, 3}, Arrays.copyOf(slots, 4));
+        assertEquals(4, env.metrics.get("input.dropped"));
+    }
+
+    @Test
+    void offer_RepeatsWithinWindowAreCoalesced() {
+        InputRing ring = new InputRing(env, 8, InputRing.Overflow.DROP_OLDEST, InputRing.Coalescing.REPEATS, 50);
+        assertTrue(ring.offer(3, 1000));
+        assertFalse(ring.offer(3, 1030)); // key repeat
+        assertFalse(ring.offer(3, 1060)); // still held - the window moves with the repeats
+        assertTrue(ring.offer(3, 1200));
+        assertTrue(ring.offer(4, 1210));
+
+        assertEquals(3, ring.drain(slots, times));
+        assertArrayEquals(new long[]{1000, 1200, 1210}, Arrays.copyOf(times, 3));
+    }
+
+    @Test
+    void drain_TogglesCancelEachOther() {
+        InputRing ring = new InputRing(env, 8, InputRing.Overflow.DROP_OLDEST, InputRing.Coalescing.TOGGLES, 0);
+        for (int slot : new int[]{1, 2, 1, 3, 2, 2})
+            ring.offer(slot, 0);
+
+        assertEquals(2, ring.drain(slots, times));
+        assertArrayEquals(new int[]{3, 2}, Arrays.copyOf(slots, 2));
+    }
+
+    @Test
+    void take_ConsumerGetsEveryPressInOrder() throws InterruptedException {
+        InputRing ring = new InputRing(env, 8, InputRing.Overflow.DROP_NEWEST, InputRing.Coalescing.NONE, 0);
+        int presses = 100_000;
+        int[] received = new int[1];
+        boolean[] inOrder = {true};
+        Thread consumer = new Thread(() -> {
+            int[] s = new int[8];
+            long[] t = new long[8];
+            while (received[0] < presses) {
+                int count = ring.take(s, t);
+                for (int i = 0; i < count; i++)
+                    if (t[i] != received[0]++) inOrder[0] = false;
+            }
+        });
+        ring.setConsumer(consumer);
+        consumer.start();
+        for (int press = 0; press < presses; press++)
+            while (!ring.offer(press % 12, press)) Thread.yield();
+        consumer.join(10_000);
+
+        assertFalse(consumer.isAlive());
+        assertEquals(presses, received[0]);
+        assertTrue(inOrder[0]);
+    }
+}
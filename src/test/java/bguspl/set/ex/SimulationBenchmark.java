@@ -0,0 +1,53 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UserInterfaceHeadless;
+import bguspl.set.UtilImpl;
+
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Reports the presses per second the game core (GameState, driven by Simulation) plays on a single thread, and the
+ * bytes it allocates per press (games included).
+ * Arguments: [strategies] [games per round] [rounds] [turn timeout seconds].
+ */
+public class SimulationBenchmark {
+
+    public static void main(String[] args) {
+        Properties properties = new Properties();
+        String strategies = args.length > 0 ? args[0] : "random,random,random,random";
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int players = strategies.split(",").length;
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", String.valueOf(players));
+        properties.put("ComputerStrategies", strategies);
+        properties.put("ComputerPressDelaySeconds", "0.1");
+        properties.put("TurnTimeoutSeconds", args.length > 3 ? args[3] : "60");
+        properties.put("LogLevel", "OFF");
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new UserInterfaceHeadless(), new UtilImpl(config));
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        for (int round = 0; round < rounds; round++) {
+            long presses = 0, claims = 0;
+            long allocated = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            for (int game = 0; game < games; game++) {
+                GameState state = Simulation.play(env, round * (long) games + game, 600_000);
+                presses += state.presses();
+                for (int player = 0; player < players; player++) claims += state.claims(player);
+            }
+            long nanos = System.nanoTime() - start;
+            allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+            System.out.printf("round %d: %d games, %d presses, %d claims in %.1f ms - %.2fM presses/s, %.1f bytes/press%n",
+                    round, games, presses, claims, nanos / 1e6, presses * 1e3 / nanos, (double) allocated / presses);
+        }
+    }
+}
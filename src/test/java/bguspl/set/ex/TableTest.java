@@ -9,9 +9,13 @@ import org.junit.jupiter.api.Test;
 
 import java.util.List;
 import java.util.Properties;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TableTest {
 
@@ -95,6 +99,39 @@ class TableTest {
         placeSomeCardsAndAssert();
     }
 
+    @Test
+    void placeToken_ClaimIsStaleAfterCardRemoved() {
+        fillAllSlots();
+        table.placeToken(0, 0);
+        table.placeToken(0, 1);
+        table.placeToken(0, 2);
+
+        Claim claim = table.waitingForDealer.peek();
+        assertNotNull(claim);
+        assertFalse(table.isStale(claim));
+
+        table.removeCard(1);
+        assertTrue(table.isStale(claim));
+    }
+
+    @Test
+    void snapshot_PublishedOnEveryChange() {
+        table.placeCard(8, 2);
+        table.placeToken(1, 2);
+        BoardSnapshot board = table.snapshot();
+
+        assertEquals(8, board.card(2));
+        assertTrue(board.hasToken(1, 2));
+        assertEquals(1, board.tokenCount(1));
+
+        table.removeCard(2);
+        assertEquals(-1, table.snapshot().card(2));
+        assertEquals(0, table.snapshot().tokenCount(1));
+        assertTrue(table.snapshot().version > board.version);
+        // older snapshots never change
+        assertEquals(8, board.card(2));
+    }
+
     static class MockUserInterface implements UserInterface {
         @Override
         public void dispose() {}
@@ -138,11 +175,22 @@ class TableTest {
             return false;
         }
 
+        @Override
+        public void testSets(int[] cards, int count, boolean[] valid) {}
+
         @Override
         public List<int[]> findSets(List<Integer> deck, int count) {
             return null;
         }
 
+        @Override
+        public List<int[]> findAllSets(List<Integer> deck) {
+            return null;
+        }
+
+        @Override
+        public void forEachSet(List<Integer> deck, Consumer<int[]> action) {}
+
         @Override
         public void spin() {}
     }
@@ -0,0 +1,79 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ThreadAccountingTest {
+
+    private static final int ALLOCATED = 8 << 20;
+
+    Env env;
+    ThreadAccounting accounting;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("ThreadAccountingSeconds", "1");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        accounting = new ThreadAccounting(env);
+        assumeTrue(accounting.enabled());
+    }
+
+    private static void burn(long nanos) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long start = threads.getCurrentThreadCpuTime();
+        while (threads.getCurrentThreadCpuTime() - start < nanos) {
+            // reading the counter is the work
+        }
+    }
+
+    @Test
+    void enter_CostIsChargedToThePhaseItWasSpentIn() throws InterruptedException {
+        ThreadAccounting.Account account = accounting.register(ThreadAccounting.Phase.DEALING);
+        burn(20_000_000);
+
+        account.enter(ThreadAccounting.Phase.CLAIM_VERIFICATION);
+        List<byte[]> sink = new ArrayList<>();
+        for (int i = 0; i < ALLOCATED / 4096; i++) sink.add(new byte[4096]);
+
+        account.enter(ThreadAccounting.Phase.END_CHECK);
+        // entering the same phase again, or a phase from another thread, changes nothing
+        account.enter(ThreadAccounting.Phase.END_CHECK);
+        Thread other = new Thread(() -> account.enter(ThreadAccounting.Phase.RESHUFFLE));
+        other.start();
+        other.join();
+        burn(1_000_000);
+        account.close();
+
+        assertTrue(account.cpuNanosIn(ThreadAccounting.Phase.DEALING) >= 20_000_000);
+        assertTrue(account.allocatedBytesIn(ThreadAccounting.Phase.CLAIM_VERIFICATION) >= ALLOCATED);
+        assertTrue(account.allocatedBytesIn(ThreadAccounting.Phase.DEALING) < ALLOCATED);
+        assertTrue(account.cpuNanosIn(ThreadAccounting.Phase.END_CHECK) > 0);
+        assertEquals(0, account.cpuNanosIn(ThreadAccounting.Phase.RESHUFFLE));
+        assertEquals(0, account.allocatedBytesIn(ThreadAccounting.Phase.RESHUFFLE));
+        assertEquals(0, account.cpuNanosIn(ThreadAccounting.Phase.IDLE_POLLING));
+        assertTrue(sink.size() > 0);
+
+        // the totals are published as metrics when the accounting ends
+        accounting.terminate();
+        String name = "threads." + Thread.currentThread().getName();
+        assertTrue(env.metrics.get(name + ".dealing.cpuMicros") >= 20_000);
+        assertTrue(env.metrics.get(name + ".claim.verification.allocatedBytes") >= ALLOCATED);
+        assertTrue(env.metrics.get(name + ".cpuMicros") >= env.metrics.get(name + ".dealing.cpuMicros"));
+    }
+}